@@ -9,7 +9,7 @@ from typing import List
 # Importiamo solo per type hinting.
 # Se questo causa problemi di import circolare, si può rimuovere l'hint o usare stringhe.
 try:
-    from astra.metrics_visitor import ClassMetrics, MethodMetrics
+    from astra.model import ClassMetrics, MethodMetrics
 except ImportError:
     pass
 
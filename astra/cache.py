@@ -0,0 +1,162 @@
+"""
+Result Cache Module
+Persistent on-disk cache of per-file analysis results.
+
+Entries are keyed by the SHA-256 of the .java file content, salted with the
+ASTra version, the cache format, the grammar files and the source of the
+modules that compute a FileResult: a change to any of them invalidates every
+entry. A hit returns the stored FileResult directly, so the
+file is never lexed, parsed or visited again. The cache is bounded in size and
+evicts the least recently used entries first (recency is tracked through the
+entry files' modification time, refreshed on every hit).
+"""
+
+import os
+import pickle
+import hashlib
+import tempfile
+from pathlib import Path
+from collections import OrderedDict
+from typing import Optional
+
+from astra import __version__
+
+# Incrementare quando cambia la struttura di FileResult/ClassMetrics/MethodMetrics
+CACHE_FORMAT_VERSION = 4
+
+DEFAULT_CACHE_DIR = ".astra_cache"
+DEFAULT_CACHE_SIZE_MB = 512
+
+GRAMMAR_DIR = Path(__file__).resolve().parent.parent / 'grammar'
+ASTRA_DIR = Path(__file__).resolve().parent
+# Moduli che producono un FileResult: una modifica al loro codice invalida la cache
+# (aggiornare l'elenco quando un nuovo modulo entra nell'analisi di un file)
+ANALYSIS_MODULES = ('cache', 'calculator', 'graph_builder', 'lexer_engine', 'metrics_listener',
+                    'metrics_visitor', 'model', 'parsing', 'pipeline', 'tokens')
+
+_salt: Optional[bytes] = None
+
+
+def compute_salt() -> bytes:
+    """Hash of everything (besides the file content) that can change the analysis results"""
+    global _salt
+    if _salt is None:
+        digest = hashlib.sha256()
+        digest.update(f"astra={__version__};format={CACHE_FORMAT_VERSION};".encode('utf-8'))
+        for grammar_file in sorted(GRAMMAR_DIR.glob('*.g4')):
+            digest.update(grammar_file.read_bytes())
+        for module in ANALYSIS_MODULES:
+            digest.update(f"{module}.py:".encode('utf-8'))
+            digest.update((ASTRA_DIR / f"{module}.py").read_bytes())
+        _salt = digest.digest()
+    return _salt
+
+
+class ResultCache:
+    """Content-addressed, size-capped LRU cache of FileResult objects"""
+
+    def __init__(self, cache_dir: str = DEFAULT_CACHE_DIR, max_bytes: int = DEFAULT_CACHE_SIZE_MB * 1024 * 1024):
+        self.cache_dir = Path(cache_dir)
+        self.max_bytes = max_bytes
+        self.salt = compute_salt()
+        self.hits = 0
+        self._entries: "OrderedDict[str, int]" = OrderedDict()  # key -> size, oldest first
+        self._total_bytes = 0
+        self._load_index()
+
+    def _entry_path(self, key: str) -> Path:
+        return self.cache_dir / key[:2] / f"{key}.pkl"
+
+    def _load_index(self):
+        """Rebuild the LRU order from the entries on disk (oldest mtime first)"""
+        if not self.cache_dir.is_dir():
+            return
+        found = []
+        for entry in self.cache_dir.glob('*/*.pkl'):
+            # Solo le voci della cache: altri file nella directory non contano per il limite
+            if not self._is_entry(entry):
+                continue
+            try:
+                stat = entry.stat()
+            except OSError:
+                continue
+            found.append((stat.st_mtime, entry.stem, stat.st_size))
+        for _, key, size in sorted(found):
+            self._entries[key] = size
+            self._total_bytes += size
+
+    @staticmethod
+    def _is_entry(path: Path) -> bool:
+        """True for <cache_dir>/<key[:2]>/<key>.pkl, key being a SHA-256 hex digest"""
+        key = path.stem
+        return (len(key) == 64 and path.parent.name == key[:2]
+                and all(c in '0123456789abcdef' for c in key))
+
+    def key_for(self, file_path: str, variant: str = '') -> str:
+        """SHA-256 of the file content, salted with version, grammar and analysis variant"""
+        digest = hashlib.sha256(self.salt)
+        if variant:
+            digest.update(variant.encode('utf-8') + b'\0')
+        with open(file_path, 'rb') as f:
+            digest.update(f.read())
+        return digest.hexdigest()
+
+    def __contains__(self, key: str) -> bool:
+        return key in self._entries
+
+    def get(self, key: str, file_path: str):
+        """Return the cached FileResult re-targeted at file_path, or None on a miss"""
+        if key not in self._entries:
+            return None
+        entry_path = self._entry_path(key)
+        try:
+            with open(entry_path, 'rb') as f:
+                result = pickle.load(f)
+            os.utime(entry_path)  # aggiorna la recency per l'LRU
+        except Exception:
+            # Voce corrotta o rimossa esternamente: trattala come un miss
+            self._forget(key)
+            return None
+
+        self._entries.move_to_end(key)
+        self.hits += 1
+        # Lo stesso contenuto può trovarsi in un altro percorso (file spostato/copiato)
+        result.file_path = file_path
+        for class_metrics in result.classes.values():
+            class_metrics.file_path = file_path
+        return result
+
+    def put(self, key: str, result):
+        """Store a FileResult and evict least recently used entries beyond the size cap"""
+        entry_path = self._entry_path(key)
+        try:
+            entry_path.parent.mkdir(parents=True, exist_ok=True)
+            # Scrittura atomica: nessun lettore vede mai un file a metà
+            fd, tmp_path = tempfile.mkstemp(dir=entry_path.parent, suffix='.tmp')
+            with os.fdopen(fd, 'wb') as f:
+                pickle.dump(result, f, protocol=pickle.HIGHEST_PROTOCOL)
+            os.replace(tmp_path, entry_path)
+            size = entry_path.stat().st_size
+        except OSError as e:
+            print(f"Warning: Could not write cache entry for {result.file_path}: {e}")
+            return
+
+        if key in self._entries:
+            self._total_bytes -= self._entries.pop(key)
+        self._entries[key] = size
+        self._total_bytes += size
+        self._evict()
+
+    def _forget(self, key: str):
+        size = self._entries.pop(key, None)
+        if size is not None:
+            self._total_bytes -= size
+        try:
+            self._entry_path(key).unlink()
+        except OSError:
+            pass
+
+    def _evict(self):
+        while self._total_bytes > self.max_bytes and self._entries:
+            oldest = next(iter(self._entries))
+            self._forget(oldest)
@@ -2,10 +2,27 @@
 Calculator Module
 Contains all mathematical formulas for software metrics calculations.
 This module keeps the metric calculation logic clean and reusable.
+NumPy is imported only by the batch functions, so importing this module (as the
+CLI does at start-up) does not load it.
 """
 
 import math
-from typing import Dict
+from typing import Callable, Dict, List
+
+HALSTEAD_KEYS = ('n1', 'n2', 'N1', 'N2', 'N', 'n', 'V', 'D', 'E', 'T', 'L', 'B')
+
+
+def _exact_log(log: Callable[[float], float], values: 'np.ndarray') -> 'np.ndarray':
+    """
+    Element-wise log computed with the same libm function as the scalar formulas.
+    NumPy's SIMD logarithms may differ in the last bit; vocabulary sizes and LOC
+    take few distinct values, so the log of each distinct value is taken once.
+    """
+    import numpy as np
+    if values.size == 0:
+        return np.zeros(0, dtype=np.float64)
+    distinct, inverse = np.unique(values, return_inverse=True)
+    return np.array([log(v) for v in distinct.tolist()], dtype=np.float64)[inverse.reshape(values.shape)]
 
 
 class HalsteadCalculator:
@@ -80,6 +97,33 @@ class HalsteadCalculator:
             'L': L,
             'B': B
         }
+    
+    @staticmethod
+    def calculate_batch(n1: 'np.ndarray', n2: 'np.ndarray', N1: 'np.ndarray', N2: 'np.ndarray') -> Dict[str, 'np.ndarray']:
+        """
+        Vectorized calculate(): one array per metric, element i computed from (n1[i], n2[i], N1[i], N2[i])
+        with the same zero guards and the same operation order, so every value is bit-identical.
+        """
+        import numpy as np
+        n1, n2, N1, N2 = (np.asarray(a, dtype=np.int64) for a in (n1, n2, N1, N2))
+        N = N1 + N2
+        n = n1 + n2
+        valid = (n1 > 0) & (n2 > 0)
+        
+        V = np.where(valid, N * _exact_log(math.log2, np.where(valid, n, 1)), 0.0)
+        D = np.where(valid, (n1 / 2.0) * (N2 / np.where(valid, n2, 1)), 0.0)
+        E = D * V
+        T = E / 18.0
+        L = np.divide(1.0, D, out=np.zeros_like(D), where=D > 0)
+        B = V / 3000.0
+        return {'n1': n1, 'n2': n2, 'N1': N1, 'N2': N2, 'N': N, 'n': n,
+                'V': V, 'D': D, 'E': E, 'T': T, 'L': L, 'B': B}
+    
+    @staticmethod
+    def batch_to_dicts(batch: Dict[str, 'np.ndarray']) -> List[Dict[str, float]]:
+        """Split a calculate_batch() result into the per-item dicts calculate() returns"""
+        columns = [batch[key].tolist() for key in HALSTEAD_KEYS]
+        return [dict(zip(HALSTEAD_KEYS, row)) for row in zip(*columns)]
 
 
 class ComplexityCalculator:
@@ -130,6 +174,19 @@ class MaintainabilityCalculator:
         
         return mi
     
+    @staticmethod
+    def calculate_batch(volume: 'np.ndarray', cyclomatic_complexity: 'np.ndarray', loc: 'np.ndarray') -> 'np.ndarray':
+        """Vectorized calculate(): same guards, operation order and clamping, bit-identical results"""
+        import numpy as np
+        volume = np.asarray(volume, dtype=np.float64)
+        loc = np.asarray(loc, dtype=np.int64)
+        cyclomatic_complexity = np.asarray(cyclomatic_complexity, dtype=np.int64)
+        
+        log_volume = _exact_log(math.log, np.where(volume <= 0, 1.0, volume))
+        log_loc = _exact_log(math.log, np.where(loc <= 0, 1, loc))
+        mi = 171.0 - 5.2 * log_volume - 0.23 * cyclomatic_complexity - 16.2 * log_loc
+        return np.clip(mi, 0.0, 100.0)
+    
     @staticmethod
     def get_category(mi: float) -> str:
         """
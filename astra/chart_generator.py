@@ -2,17 +2,93 @@
 Chart Generator Module
 Generates Matplotlib visualizations and converts them to Base64-encoded images
 for embedding in HTML reports.
+
+With chart_format='svg' the charts are returned as inline SVG markup instead:
+vector, sharp at any zoom, and not inflated by base64. Text stays text
+(svg.fonttype 'none'), and scatter plots with many points are decimated on a
+screen-space grid: markers that would land on the same spot are drawn once.
+
+Above DENSITY_THRESHOLD plotted classes the complexity scatter becomes a 2D
+histogram (class count per cell, log colour scale) with only the top-N
+outliers by WMC x Volume drawn as points. The histogram is binned with NumPy
+before plotting, so the figure always has the same fixed number of cells and
+the rendering time does not depend on the number of classes.
+
+Figures are built with the object-oriented Figure API (no pyplot global state),
+so the three charts can be rendered at the same time in worker processes.
+Each encoded chart is cached on disk under a hash of its input data: an
+unchanged dataset reuses the previous image without drawing anything.
 """
 
 import base64
+import hashlib
 import io
-from typing import Dict, List
+import json
+import os
+import re
+import tempfile
+import time
+from concurrent.futures import ProcessPoolExecutor
+from pathlib import Path
+from typing import Dict, List, Optional, Tuple
 import matplotlib
-matplotlib.use('Agg')  # Non-interactive backend
-import matplotlib.pyplot as plt
+from matplotlib.colors import LogNorm
+from matplotlib.figure import Figure
 import numpy as np
 
-from astra.metrics_visitor import ClassMetrics
+from astra import __version__
+from astra.constants import CHART_FORMATS, DEFAULT_CHART_FORMAT
+from astra.metrics_store import MetricsStore
+
+# Decimazione dello scatter SVG: oltre questa soglia, un punto per cella della griglia
+SVG_SCATTER_MAX_POINTS = 2000
+DECIMATION_GRID = (360, 216)  # celle di ~2pt su un grafico di 720x432pt (marker da ~10pt)
+
+# Scatter adattivo: oltre la soglia, istogramma 2D + i soli outlier
+DENSITY_THRESHOLD = 10000
+DENSITY_BINS = (80, 50)
+OUTLIERS_TOP_N = 15
+LABEL_MAX_POINTS = 20
+
+
+def decimate_points(x_values, y_values, grid: Tuple[int, int] = DECIMATION_GRID) -> Tuple[np.ndarray, np.ndarray]:
+    """Keep the first point of every occupied grid cell over the data range, in the original order"""
+    x = np.asarray(x_values, dtype=np.float64)
+    y = np.asarray(y_values, dtype=np.float64)
+    cells = []
+    for values, size in ((x, grid[0]), (y, grid[1])):
+        low, span = values.min(), np.ptp(values)
+        scaled = (values - low) / (span if span > 0 else 1.0)
+        cells.append(np.minimum((scaled * size).astype(np.int64), size - 1))
+    _, first = np.unique(cells[0] * grid[1] + cells[1], return_index=True)
+    keep = np.sort(first)
+    return x[keep], y[keep]
+
+
+def top_outliers(x: np.ndarray, y: np.ndarray, top_n: int = OUTLIERS_TOP_N) -> np.ndarray:
+    """
+    Indices of the top_n points by x*y, highest first, ties in point order
+    (partial selection: O(n), no full sort).
+    """
+    score = x * y
+    k = min(top_n, len(score))
+    if k == 0:
+        return np.zeros(0, dtype=np.int64)
+    kth_score = -np.partition(-score, k - 1)[k - 1]
+    # Tutti i pari merito del k-esimo, non un sottoinsieme arbitrario: poi ordine stabile e taglio
+    top = np.flatnonzero(score >= kth_score)
+    return top[np.lexsort((top, -score[top]))][:k]
+
+
+def complexity_chart_input(x: np.ndarray, y: np.ndarray, names: np.ndarray) -> Tuple[str, tuple]:
+    """(plot function, arguments) of the complexity chart: points, or density + outliers for large projects"""
+    if len(x) <= DENSITY_THRESHOLD:
+        labels = names.tolist() if len(x) <= LABEL_MAX_POINTS else []
+        return 'plot_complexity_scatter', (x.tolist(), y.tolist(), labels)
+    counts, x_edges, y_edges = np.histogram2d(x, y, bins=DENSITY_BINS)
+    top = top_outliers(x, y)
+    return 'plot_complexity_density', (counts.astype(np.int64).tolist(), x_edges.tolist(), y_edges.tolist(),
+                                       names[top].tolist(), x[top].tolist(), y[top].tolist(), len(x))
 
 
 class ChartGenerator:
@@ -25,37 +101,53 @@ class ChartGenerator:
         fig.savefig(buf, format='png', dpi=100, bbox_inches='tight')
         buf.seek(0)
         img_str = base64.b64encode(buf.read()).decode('utf-8')
-        plt.close(fig)
         return img_str
     
     @staticmethod
-    def generate_complexity_scatter_plot(classes: List[ClassMetrics]) -> str:
+    def figure_to_svg(fig) -> str:
+        """Convert matplotlib figure to inline SVG markup that scales with its container"""
+        buf = io.BytesIO()
+        with matplotlib.rc_context({'svg.fonttype': 'none'}):
+            fig.savefig(buf, format='svg', bbox_inches='tight', metadata={'Date': None})
+        svg = buf.getvalue().decode('utf-8')
+        svg = svg[svg.index('<svg'):]  # via dichiarazione XML e DOCTYPE, non ammessi inline
+        # Dimensioni fisse in pt -> larghezza del contenitore, proporzioni dal viewBox
+        return re.sub(r'<svg([^>]*?) width="[^"]*" height="[^"]*"', r'<svg\1 width="100%"', svg, count=1)
+    
+    @staticmethod
+    def render_figure(fig, chart_format: str = DEFAULT_CHART_FORMAT) -> str:
+        if chart_format == 'svg':
+            return ChartGenerator.figure_to_svg(fig)
+        return ChartGenerator.figure_to_base64(fig)
+    
+    @staticmethod
+    def generate_complexity_scatter_plot(store: MetricsStore, chart_format: str = DEFAULT_CHART_FORMAT) -> str:
         """
         Generate Complexity Scatter Plot.
         X-axis = Cyclomatic Complexity (WMC), Y-axis = Halstead Volume.
-        Each dot represents a class.
+        Each dot represents a class (density cells + outliers above DENSITY_THRESHOLD classes).
         """
-        fig, ax = plt.subplots(figsize=(10, 6))
-        
-        x_values = []
-        y_values = []
-        labels = []
-        
-        for class_metrics in classes:
-            if class_metrics.aggregated_halstead:
-                volume = class_metrics.aggregated_halstead.get('V', 0)
-                wmc = class_metrics.wmc
-                
-                if volume > 0 and wmc > 0:
-                    x_values.append(wmc)
-                    y_values.append(volume)
-                    labels.append(class_metrics.class_name)
+        plotter, args = complexity_chart_input(*store.scatter_arrays())
+        return getattr(ChartGenerator, plotter)(*args, chart_format=chart_format)
+    
+    @staticmethod
+    def plot_complexity_scatter(x_values: List[float], y_values: List[float], labels: List[str],
+                                chart_format: str = DEFAULT_CHART_FORMAT) -> str:
+        """Draw the scatter plot from (WMC, Volume) pairs of the classes with both metrics > 0"""
+        fig = Figure(figsize=(10, 6))
+        ax = fig.subplots()
         
         if x_values and y_values:
+            total = len(x_values)
+            if chart_format == 'svg' and total > SVG_SCATTER_MAX_POINTS:
+                # Un elemento SVG per punto: si disegnano solo i punti distinguibili
+                x_values, y_values = decimate_points(x_values, y_values)
+                ax.text(0.99, 0.01, f"{len(x_values):,} of {total:,} classes drawn (overlapping points merged)",
+                        transform=ax.transAxes, ha='right', va='bottom', fontsize=8, color='gray')
             ax.scatter(x_values, y_values, alpha=0.6, s=100, c='steelblue', edgecolors='black', linewidth=1)
             
             # Add labels for top classes
-            if len(x_values) <= 20:  # Only label if not too many classes
+            if len(x_values) <= LABEL_MAX_POINTS:  # Only label if not too many classes
                 for i, label in enumerate(labels):
                     ax.annotate(label, (x_values[i], y_values[i]), 
                               xytext=(5, 5), textcoords='offset points', fontsize=8)
@@ -66,21 +158,57 @@ class ChartGenerator:
                     fontsize=14, fontweight='bold')
         ax.grid(True, alpha=0.3)
         
-        return ChartGenerator.figure_to_base64(fig)
+        return ChartGenerator.render_figure(fig, chart_format)
+    
+    @staticmethod
+    def plot_complexity_density(counts: List[List[int]], x_edges: List[float], y_edges: List[float],
+                                outlier_names: List[str], outlier_x: List[float], outlier_y: List[float],
+                                total: int, chart_format: str = DEFAULT_CHART_FORMAT) -> str:
+        """Draw the complexity chart as a 2D histogram (counts[i][j] = classes in x bin i, y bin j) plus outliers"""
+        fig = Figure(figsize=(10, 6))
+        ax = fig.subplots()
+        
+        # histogram2d indicizza [x][y], pcolormesh vuole righe = y; le celle vuote restano trasparenti
+        grid = np.ma.masked_equal(np.asarray(counts, dtype=np.int64).T, 0)
+        mesh = ax.pcolormesh(x_edges, y_edges, grid, cmap='Blues',
+                             norm=LogNorm(vmin=1, vmax=max(1, int(grid.max()))))
+        fig.colorbar(mesh, ax=ax, label='Classes per cell')
+        
+        if outlier_names:
+            ax.scatter(outlier_x, outlier_y, s=80, c='crimson', edgecolors='black', linewidth=1, zorder=3,
+                       label=f'Top {len(outlier_names)} by WMC × Volume')
+            for name, x, y in zip(outlier_names, outlier_x, outlier_y):
+                ax.annotate(name, (x, y), xytext=(5, 5), textcoords='offset points', fontsize=8)
+            ax.legend(loc='upper left')
+        ax.text(0.99, 0.01, f"{total:,} classes (density view)", transform=ax.transAxes,
+                ha='right', va='bottom', fontsize=8, color='gray')
+        
+        ax.set_xlabel('Cyclomatic Complexity (WMC)', fontsize=12, fontweight='bold')
+        ax.set_ylabel('Halstead Volume (V)', fontsize=12, fontweight='bold')
+        ax.set_title('Complexity Scatter Plot\n(Classes in Hard-to-Maintain Zone)', 
+                    fontsize=14, fontweight='bold')
+        ax.grid(True, alpha=0.3)
+        
+        return ChartGenerator.render_figure(fig, chart_format)
     
     @staticmethod
-    def generate_ck_radar_chart(classes: List[ClassMetrics], top_n: int = 5) -> str:
+    def generate_ck_radar_chart(store: MetricsStore, top_n: int = 5, chart_format: str = DEFAULT_CHART_FORMAT) -> str:
         """
         Generate CK Metrics Radar Chart (Spider Plot).
         Compares top N classes based on WMC, DIT, CBO.
         """
-        # Sort classes by WMC and take top N
-        sorted_classes = sorted(classes, key=lambda c: c.wmc, reverse=True)[:top_n]
-        
-        if not sorted_classes:
+        top = store.top_by_wmc(top_n)
+        return ChartGenerator.plot_ck_radar(store.names[top].tolist(), store.wmc[top], store.dit[top], store.cbo[top],
+                                            chart_format)
+    
+    @staticmethod
+    def plot_ck_radar(names: List[str], wmc, dit, cbo, chart_format: str = DEFAULT_CHART_FORMAT) -> str:
+        """Draw the radar chart of the given classes (WMC, DIT, CBO scaled to the largest value of each)"""
+        if not names:
             # Return empty chart
-            fig, ax = plt.subplots(figsize=(8, 8), subplot_kw=dict(projection='polar'))
-            return ChartGenerator.figure_to_base64(fig)
+            fig = Figure(figsize=(8, 8))
+            fig.subplots(subplot_kw=dict(projection='polar'))
+            return ChartGenerator.render_figure(fig, chart_format)
         
         # Prepare data
         metrics = ['WMC', 'DIT', 'CBO']
@@ -90,25 +218,21 @@ class ChartGenerator:
         angles = np.linspace(0, 2 * np.pi, num_metrics, endpoint=False).tolist()
         angles += angles[:1]  # Complete the circle
         
-        fig, ax = plt.subplots(figsize=(10, 10), subplot_kw=dict(projection='polar'))
+        fig = Figure(figsize=(10, 10))
+        ax = fig.subplots(subplot_kw=dict(projection='polar'))
         
-        # Normalize values for better visualization
-        max_wmc = max(c.wmc for c in sorted_classes) if sorted_classes else 1
-        max_dit = max(c.dit for c in sorted_classes) if sorted_classes else 1
-        max_cbo = max(c.cbo for c in sorted_classes) if sorted_classes else 1
+        # Normalize values (0-1 scale) for better visualization, one column per metric
+        raw = np.column_stack([wmc, dit, cbo]).astype(np.float64)
+        maxima = raw.max(axis=0)
+        normalized = np.divide(raw, maxima, out=np.zeros_like(raw), where=maxima > 0)
         
-        colors = plt.cm.Set3(np.linspace(0, 1, len(sorted_classes)))
+        colors = matplotlib.colormaps['Set3'](np.linspace(0, 1, len(names)))
         
-        for idx, class_metrics in enumerate(sorted_classes):
-            # Normalize values (0-1 scale)
-            values = [
-                class_metrics.wmc / max_wmc if max_wmc > 0 else 0,
-                class_metrics.dit / max_dit if max_dit > 0 else 0,
-                class_metrics.cbo / max_cbo if max_cbo > 0 else 0
-            ]
+        for idx, name in enumerate(names):
+            values = normalized[idx].tolist()
             values += values[:1]  # Complete the circle
             
-            ax.plot(angles, values, 'o-', linewidth=2, label=class_metrics.class_name, color=colors[idx])
+            ax.plot(angles, values, 'o-', linewidth=2, label=name, color=colors[idx])
             ax.fill(angles, values, alpha=0.25, color=colors[idx])
         
         ax.set_xticks(angles[:-1])
@@ -119,19 +243,22 @@ class ChartGenerator:
         ax.legend(loc='upper right', bbox_to_anchor=(1.3, 1.1))
         ax.grid(True)
         
-        return ChartGenerator.figure_to_base64(fig)
+        return ChartGenerator.render_figure(fig, chart_format)
     
     @staticmethod
-    def generate_mi_distribution_bar(classes: List[ClassMetrics]) -> str:
+    def generate_mi_distribution_bar(store: MetricsStore, chart_format: str = DEFAULT_CHART_FORMAT) -> str:
         """
         Generate Maintainability Index Distribution Bar Chart.
         Shows how many classes are Green (>85), Yellow (65-85), Red (<65).
         """
-        fig, ax = plt.subplots(figsize=(8, 6))
-        
-        green_count = sum(1 for c in classes if c.maintainability_index > 85)
-        yellow_count = sum(1 for c in classes if 65 <= c.maintainability_index <= 85)
-        red_count = sum(1 for c in classes if c.maintainability_index < 65)
+        return ChartGenerator.plot_mi_distribution(*store.mi_buckets(), chart_format=chart_format)
+    
+    @staticmethod
+    def plot_mi_distribution(green_count: int, yellow_count: int, red_count: int,
+                             chart_format: str = DEFAULT_CHART_FORMAT) -> str:
+        """Draw the MI distribution from the bucket counts"""
+        fig = Figure(figsize=(8, 6))
+        ax = fig.subplots()
         
         categories = ['Green\n(>85)', 'Yellow\n(65-85)', 'Red\n(<65)']
         counts = [green_count, yellow_count, red_count]
@@ -150,19 +277,153 @@ class ChartGenerator:
         ax.set_title('Maintainability Index Distribution', fontsize=14, fontweight='bold')
         ax.grid(True, alpha=0.3, axis='y')
         
-        return ChartGenerator.figure_to_base64(fig)
+        return ChartGenerator.render_figure(fig, chart_format)
+    
+    # --- RENDERING DI TUTTI I GRAFICI ---
+    
+    @staticmethod
+    def chart_inputs(store: MetricsStore) -> Dict[str, Tuple[str, tuple]]:
+        """
+        Chart name -> (plot_* function, plain-data arguments): what the charts are drawn
+        and their cache keys computed from.
+        """
+        top = store.top_by_wmc(5)
+        return {
+            'complexity_scatter': complexity_chart_input(*store.scatter_arrays()),
+            'ck_radar': ('plot_ck_radar', (store.names[top].tolist(), store.wmc[top].tolist(),
+                                           store.dit[top].tolist(), store.cbo[top].tolist())),
+            'mi_distribution': ('plot_mi_distribution', store.mi_buckets())
+        }
+    
+    @staticmethod
+    def aggregate_chart_inputs(aggregate) -> Dict[str, Tuple[str, tuple]]:
+        """Same inputs from a StreamingAggregate (scatter pairs, top WMC classes, MI buckets)"""
+        radar = aggregate.radar_classes()
+        return {
+            'complexity_scatter': complexity_chart_input(*aggregate.scatter_arrays()),
+            'ck_radar': ('plot_ck_radar', ([c.class_name for c in radar], [c.wmc for c in radar],
+                                           [c.dit for c in radar], [c.cbo for c in radar])),
+            'mi_distribution': ('plot_mi_distribution', tuple(aggregate.mi_buckets))
+        }
+    
+    @staticmethod
+    def render_charts(inputs: Dict[str, Tuple[str, tuple]], chart_format: str = DEFAULT_CHART_FORMAT,
+                      cache: Optional['ChartCache'] = None, jobs: Optional[int] = None,
+                      timings: Optional[Dict[str, Tuple[float, bool]]] = None) -> Dict[str, str]:
+        """
+        Render the charts, cached ones excepted, concurrently on up to `jobs` processes
+        (default: one per chart to draw). If given, `timings` receives
+        chart name -> (seconds, served from cache).
+        """
+        charts: Dict[str, str] = {}
+        keys = {name: chart_key(name, chart_format, chart_input) for name, chart_input in inputs.items()}
+        pending = []
+        for name, (plotter, args) in inputs.items():
+            start = time.perf_counter()
+            cached = cache.get(keys[name]) if cache is not None else None
+            if cached is not None:
+                charts[name] = cached
+                if timings is not None:
+                    timings[name] = (time.perf_counter() - start, True)
+            else:
+                pending.append((name, plotter, args, chart_format))
+        
+        workers = min(len(pending), jobs or len(pending), os.cpu_count() or 1)
+        if workers > 1:
+            with ProcessPoolExecutor(max_workers=workers) as executor:
+                rendered = list(executor.map(_render_chart, pending))
+        else:
+            rendered = [_render_chart(task) for task in pending]
+        
+        for (name, _, _, _), (chart, elapsed) in zip(pending, rendered):
+            charts[name] = chart
+            if cache is not None:
+                cache.put(keys[name], chart)
+            if timings is not None:
+                timings[name] = (elapsed, False)
+        # Stesso ordine delle chiavi di input, qualunque sia l'origine
+        return {name: charts[name] for name in inputs}
     
     @staticmethod
-    def generate_all_charts(classes: List[ClassMetrics]) -> Dict[str, str]:
+    def generate_all_charts(store: MetricsStore, chart_format: str = DEFAULT_CHART_FORMAT,
+                            cache: Optional['ChartCache'] = None,
+                            timings: Optional[Dict[str, Tuple[float, bool]]] = None) -> Dict[str, str]:
         """
-        Generate all charts and return as Base64-encoded strings.
+        Generate all charts and return as Base64-encoded strings (or inline SVG markup).
         
         Returns:
             Dictionary with chart names as keys and Base64 strings as values
         """
-        return {
-            'complexity_scatter': ChartGenerator.generate_complexity_scatter_plot(classes),
-            'ck_radar': ChartGenerator.generate_ck_radar_chart(classes),
-            'mi_distribution': ChartGenerator.generate_mi_distribution_bar(classes)
-        }
+        return ChartGenerator.render_charts(ChartGenerator.chart_inputs(store), chart_format, cache, timings=timings)
+    
+    @staticmethod
+    def generate_aggregate_charts(aggregate, chart_format: str = DEFAULT_CHART_FORMAT,
+                                  cache: Optional['ChartCache'] = None,
+                                  timings: Optional[Dict[str, Tuple[float, bool]]] = None) -> Dict[str, str]:
+        """Same charts from a StreamingAggregate"""
+        return ChartGenerator.render_charts(ChartGenerator.aggregate_chart_inputs(aggregate), chart_format, cache,
+                                            timings=timings)
+
+
+def _render_chart(task: Tuple[str, str, tuple, str]) -> Tuple[str, float]:
+    """Draw and encode one chart (runs in a worker process); returns (chart, seconds)"""
+    _, plotter, args, chart_format = task
+    start = time.perf_counter()
+    chart = getattr(ChartGenerator, plotter)(*args, chart_format=chart_format)
+    return chart, time.perf_counter() - start
+
+
+def _chart_salt() -> bytes:
+    """Everything besides the data that changes the images: ASTra, Matplotlib and this module's code"""
+    digest = hashlib.sha256()
+    digest.update(f"astra={__version__};matplotlib={matplotlib.__version__};".encode('utf-8'))
+    digest.update(Path(__file__).read_bytes())
+    return digest.digest()
 
+
+_CHART_SALT = _chart_salt()
+
+
+def chart_key(name: str, chart_format: str, chart_input: Tuple[str, tuple]) -> str:
+    digest = hashlib.sha256(_CHART_SALT)
+    digest.update(json.dumps([name, chart_format, chart_input]).encode('utf-8'))
+    return digest.hexdigest()
+
+
+class ChartCache:
+    """
+    Encoded charts on disk (<cache_dir>/charts), one file per chart_key.
+    Only the most recently used MAX_ENTRIES are kept (recency = file mtime, refreshed on hits).
+    """
+    MAX_ENTRIES = 60
+    
+    def __init__(self, cache_dir: str):
+        self.directory = Path(cache_dir) / 'charts'
+        self.hits = 0
+    
+    def get(self, key: str) -> Optional[str]:
+        path = self.directory / key
+        try:
+            chart = path.read_text(encoding='utf-8')
+            os.utime(path)
+        except OSError:
+            return None
+        self.hits += 1
+        return chart
+    
+    def put(self, key: str, chart: str):
+        try:
+            self.directory.mkdir(parents=True, exist_ok=True)
+            fd, temp_path = tempfile.mkstemp(dir=self.directory, prefix='.tmp_')
+            with os.fdopen(fd, 'w', encoding='utf-8') as f:
+                f.write(chart)
+            os.replace(temp_path, self.directory / key)
+            self._evict()
+        except OSError:
+            pass  # la cache è solo un'ottimizzazione
+    
+    def _evict(self):
+        entries = sorted((entry.stat().st_mtime, entry) for entry in self.directory.iterdir()
+                         if not entry.name.startswith('.tmp_'))
+        for _, entry in entries[:max(0, len(entries) - self.MAX_ENTRIES)]:
+            entry.unlink()
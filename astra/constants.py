@@ -15,11 +15,14 @@ class C:
 # Default output directory
 DEFAULT_OUTPUT_DIR = "output"
 
-# Matplotlib configuration
-try:
-    import matplotlib
-    matplotlib.use('Agg')  # Non-interactive backend
-    HAS_MATPLOTLIB = True
-except ImportError:
-    HAS_MATPLOTLIB = False
+# Scelte della riga di comando: qui e non nei moduli che le usano, così leggerle
+# (anche solo per --help) non importa matplotlib né i generatori del report.
+# Il backend di matplotlib non va impostato: i grafici usano Figure senza pyplot.
+CHART_FORMATS = ('png', 'svg')
+DEFAULT_CHART_FORMAT = 'png'
+
+# Layout della Sezione C: accordion con tutto il DOM, dati JSON resi dal client,
+# oppure una pagina indice più una pagina per package
+REPORT_LAYOUTS = ('accordion', 'virtual', 'paged')
+DEFAULT_REPORT_LAYOUT = 'accordion'
 
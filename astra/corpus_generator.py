@@ -0,0 +1,360 @@
+"""
+Synthetic Corpus Generator
+Deterministic Java source trees of any size, for scale testing without network access.
+
+Every file is generated from its own random stream, seeded with the corpus
+seed and the file index, so the same CorpusSpec always produces byte-identical
+files whatever the order (or number of processes) they are written in.
+
+The shape of the code is controlled by the spec: number of files and classes
+per file, depth of the extends chains, methods per class, statements per method,
+how many statements are branches (if/for/while/switch/try), how deep they nest
+and how often generic types, fields and methods appear. The output is valid
+Java: one public class per file named after it, parents always in the same
+package, locals declared before use and with unique names.
+
+Usage:
+    python -m astra.corpus_generator <output_dir> [--files N] [--classes-per-file N] [--seed S] ...
+"""
+
+import argparse
+import json
+import random
+import sys
+from concurrent.futures import ProcessPoolExecutor
+from pathlib import Path
+from typing import Dict, List, Tuple
+
+from astra import __version__
+from astra.constants import C
+
+MANIFEST_NAME = 'corpus.json'
+
+
+class CorpusSpec:
+    """Size and shape of a synthetic corpus (all counts are exact, all rates are probabilities)"""
+
+    def __init__(self, files: int = 100, classes_per_file: int = 2, inheritance_depth: int = 3,
+                 methods_per_class: int = 6, method_length: int = 12, branching: float = 0.3,
+                 nesting_depth: int = 3, generics: float = 0.2, files_per_package: int = 100, seed: int = 42):
+        self.files = files
+        self.classes_per_file = classes_per_file
+        self.inheritance_depth = inheritance_depth    # DIT massima delle catene extends
+        self.methods_per_class = methods_per_class
+        self.method_length = method_length            # istruzioni per metodo, annidate comprese
+        self.branching = branching                    # quota di istruzioni di controllo
+        self.nesting_depth = nesting_depth            # blocchi annidati al massimo
+        self.generics = generics                      # quota di campi, locali e metodi generici
+        self.files_per_package = files_per_package
+        self.seed = seed
+
+    @staticmethod
+    def for_classes(num_classes: int, classes_per_file: int = 10, **shape) -> 'CorpusSpec':
+        """Spec with (at least) num_classes classes, classes_per_file to a file"""
+        files = max(1, (num_classes + classes_per_file - 1) // classes_per_file)
+        return CorpusSpec(files=files, classes_per_file=classes_per_file, **shape)
+
+    @property
+    def num_classes(self) -> int:
+        return self.files * self.classes_per_file
+
+    def to_dict(self) -> Dict:
+        return dict(vars(self))
+
+
+class CorpusStats:
+    """What generate_corpus wrote"""
+
+    def __init__(self):
+        self.files = 0
+        self.classes = 0
+        self.methods = 0
+        self.lines = 0
+        self.bytes = 0
+
+    def add(self, classes: int, methods: int, lines: int, size: int):
+        self.files += 1
+        self.classes += classes
+        self.methods += methods
+        self.lines += lines
+        self.bytes += size
+
+    def to_dict(self) -> Dict:
+        return dict(vars(self))
+
+
+# ============================================================
+# Generazione del sorgente
+# ============================================================
+
+_GENERIC_FIELDS = (
+    "private final Map<String, List<Integer>> index = new HashMap<>();",
+    "private final List<Map.Entry<String, Integer>> entries = new ArrayList<>();",
+    "private final Set<Long> seen = new HashSet<>();",
+    "private Optional<String> label = Optional.empty();",
+)
+_EXCEPTIONS = ('IllegalStateException', 'IllegalArgumentException', 'ArithmeticException')
+_OPERATORS = ('+', '-', '*', '/', '%')
+_COMPARISONS = ('<', '>', '<=', '>=', '==', '!=')
+
+
+def _package(spec: CorpusSpec, file_index: int) -> str:
+    return f"p{file_index // spec.files_per_package:04d}"
+
+
+class _MethodWriter:
+    """Body of one method: statements drawn until the budget is spent, branches nest up to nesting_depth"""
+
+    def __init__(self, rnd: random.Random, spec: CorpusSpec, params: List[str]):
+        self.rnd = rnd
+        self.spec = spec
+        self.lines: List[str] = []
+        self.next_local = 0
+        self.params = params
+
+    def _local(self, prefix: str) -> str:
+        self.next_local += 1
+        return f"{prefix}{self.next_local}"
+
+    def _operand(self, scope: List[str]) -> str:
+        if self.rnd.random() < 0.25:
+            return str(self.rnd.randint(1, 99))
+        return self.rnd.choice(scope)
+
+    def _expr(self, scope: List[str]) -> str:
+        terms = [self._operand(scope) for _ in range(self.rnd.randint(1, 3))]
+        expr = terms[0]
+        for term in terms[1:]:
+            expr = f"{expr} {self.rnd.choice(_OPERATORS)} {term}"
+        return expr
+
+    def _cond(self, scope: List[str]) -> str:
+        # Primo operando sempre una variabile: una condizione costante renderebbe il while irraggiungibile
+        cond = f"{self.rnd.choice(scope)} {self.rnd.choice(_COMPARISONS)} {self._operand(scope)}"
+        if self.rnd.random() < 0.3:
+            cond += f" {self.rnd.choice(('&&', '||'))} {self._operand(scope)} {self.rnd.choice(_COMPARISONS)} {self._operand(scope)}"
+        return cond
+
+    def block(self, budget: int, depth: int, scope: List[str], lists: List[str]) -> int:
+        """Write statements for at most budget statements at the given depth; returns how many were used"""
+        scope, lists = list(scope), list(lists)   # le dichiarazioni restano visibili solo in questo blocco
+        indent = '    ' * (depth + 2)
+        used = 0
+        while used < budget:
+            used += 1
+            remaining = budget - used
+            if depth < self.spec.nesting_depth and remaining > 0 and self.rnd.random() < self.spec.branching:
+                used += self._control(indent, remaining, depth, scope, lists)
+            else:
+                self._simple(indent, scope, lists)
+        return used
+
+    def _nested(self, remaining: int, depth: int, scope: List[str], lists: List[str]) -> int:
+        return self.block(self.rnd.randint(1, max(1, remaining // 2)), depth + 1, scope, lists)
+
+    def _simple(self, indent: str, scope: List[str], lists: List[str]):
+        kind = self.rnd.random()
+        if kind < 0.3:
+            name = self._local('v')
+            self.lines.append(f"{indent}int {name} = {self._expr(scope)};")
+            scope.append(name)
+        elif kind < 0.3 + self.spec.generics * 0.5:
+            if lists and self.rnd.random() < 0.6:
+                self.lines.append(f"{indent}{self.rnd.choice(lists)}.add({self._expr(scope)});")
+            else:
+                name = self._local('items')
+                self.lines.append(f"{indent}List<Integer> {name} = new ArrayList<>();")
+                lists.append(name)
+        elif kind < 0.75:
+            target = self.rnd.choice(scope)
+            if target in self.params:
+                target = 'value'  # i parametri restano invariati, il campo accumula
+            self.lines.append(f"{indent}{target} {self.rnd.choice(('=', '+=', '-='))} {self._expr(scope)};")
+        elif kind < 0.9:
+            self.lines.append(f"{indent}value = Math.max(value, {self._expr(scope)});")
+        else:
+            self.lines.append(f"{indent}count++;")
+
+    def _control(self, indent: str, remaining: int, depth: int, scope: List[str], lists: List[str]) -> int:
+        kind = self.rnd.randrange(6 if lists else 5)
+        used = 0
+        if kind == 0:
+            self.lines.append(f"{indent}if ({self._cond(scope)}) {{")
+            used += self._nested(remaining, depth, scope, lists)
+            if self.rnd.random() < 0.4 and remaining - used > 0:
+                self.lines.append(f"{indent}}} else {{")
+                used += self._nested(remaining - used, depth, scope, lists)
+            self.lines.append(f"{indent}}}")
+        elif kind == 1:
+            index = self._local('i')
+            self.lines.append(f"{indent}for (int {index} = 0; {index} < {self._operand(scope)}; {index}++) {{")
+            used += self._nested(remaining, depth, scope + [index], lists)
+            self.lines.append(f"{indent}}}")
+        elif kind == 2:
+            self.lines.append(f"{indent}while ({self._cond(scope)}) {{")
+            used += self._nested(remaining, depth, scope, lists)
+            self.lines.append(f"{indent}    break;")
+            self.lines.append(f"{indent}}}")
+        elif kind == 3:
+            self.lines.append(f"{indent}switch ({self.rnd.choice(scope)} % 4) {{")
+            for label in [f"case {case}:" for case in range(self.rnd.randint(1, 3))] + ['default:']:
+                self.lines.append(f"{indent}    {label}")
+                self.lines.append(f"{indent}        value += {self._expr(scope)};")
+                self.lines.append(f"{indent}        break;")
+                used += 1
+            self.lines.append(f"{indent}}}")
+        elif kind == 4:
+            self.lines.append(f"{indent}try {{")
+            used += self._nested(remaining, depth, scope, lists)
+            self.lines.append(f"{indent}}} catch ({self.rnd.choice(_EXCEPTIONS)} e) {{")
+            self.lines.append(f"{indent}    value = 0;")
+            self.lines.append(f"{indent}}}")
+        else:
+            element = self._local('e')
+            self.lines.append(f"{indent}for (Integer {element} : {self.rnd.choice(lists)}) {{")
+            used += self._nested(remaining, depth, scope + [element], lists)
+            self.lines.append(f"{indent}}}")
+        return used
+
+
+def _method_source(rnd: random.Random, spec: CorpusSpec, method_index: int) -> List[str]:
+    if rnd.random() < spec.generics:
+        header = f"public <T extends Comparable<T>> int compute{method_index}(List<T> source, int a, int b) {{"
+        params = ['a', 'b']
+        prologue = ["        int size = source.size();"]
+        scope = params + ['size', 'value', 'count']
+    else:
+        header = f"public int compute{method_index}(int a, int b) {{"
+        params = ['a', 'b']
+        prologue = []
+        scope = params + ['value', 'count']
+    writer = _MethodWriter(rnd, spec, params)
+    writer.lines.extend(prologue)
+    writer.block(spec.method_length, 0, scope, [])
+    return [f"    {header}", *writer.lines, f"        return {writer._expr(scope)};", "    }"]
+
+
+def _class_source(rnd: random.Random, spec: CorpusSpec, class_index: int, file_index: int,
+                  public: bool) -> Tuple[List[str], int]:
+    # Posizione nella catena extends; il genitore sta sempre nello stesso package (visibilità)
+    chain_position = class_index % (spec.inheritance_depth + 1)
+    parent_file = (class_index - 1) // spec.classes_per_file
+    extends = ''
+    if chain_position > 0 and _package(spec, parent_file) == _package(spec, file_index):
+        extends = f" extends C{class_index - 1}"
+    lines = [f"{'public ' if public else ''}class C{class_index}{extends} {{"]
+    if not extends:
+        lines += ["    protected int value;", "    protected int count;"]
+    if rnd.random() < spec.generics:
+        lines.append(f"    {rnd.choice(_GENERIC_FIELDS)}")
+    lines.append("")
+    for method_index in range(spec.methods_per_class):
+        lines += _method_source(rnd, spec, method_index)
+        lines.append("")
+    lines[-1] = "}"
+    return lines, spec.methods_per_class
+
+
+def file_source(spec: CorpusSpec, file_index: int) -> Tuple[str, str, int, int]:
+    """(relative path, source, classes, methods) of one file; depends only on the spec and the index"""
+    rnd = random.Random(f"astra-corpus:{spec.seed}:{file_index}")
+    package = _package(spec, file_index)
+    first = file_index * spec.classes_per_file
+    lines = [f"package gen.{package};", "", "import java.util.*;", ""]
+    methods = 0
+    for class_index in range(first, first + spec.classes_per_file):
+        class_lines, class_methods = _class_source(rnd, spec, class_index, file_index, class_index == first)
+        lines += class_lines + [""]
+        methods += class_methods
+    return f"{package}/C{first}.java", "\n".join(lines), spec.classes_per_file, methods
+
+
+def _write_files(task: Tuple[Dict, str, range]) -> List[Tuple[int, int, int, int]]:
+    """Write a range of files (runs in a worker process); returns (classes, methods, lines, bytes) per file"""
+    spec_dict, target_dir, file_indices = task
+    spec = CorpusSpec(**spec_dict)
+    written = []
+    for file_index in file_indices:
+        relative_path, source, classes, methods = file_source(spec, file_index)
+        path = Path(target_dir) / relative_path
+        path.parent.mkdir(parents=True, exist_ok=True)
+        data = source.encode('utf-8')
+        path.write_bytes(data)
+        written.append((classes, methods, source.count("\n") + 1, len(data)))
+    return written
+
+
+def generate_corpus(target_dir: Path, spec: CorpusSpec, jobs: int = 1) -> CorpusStats:
+    """
+    Write the corpus described by spec under target_dir (one directory per package)
+    and a corpus.json manifest with the spec and the stats. Returns the stats.
+    """
+    target_dir = Path(target_dir)
+    target_dir.mkdir(parents=True, exist_ok=True)
+    # Un blocco per package: i worker non si contendono le directory
+    tasks = [(spec.to_dict(), str(target_dir), range(start, min(spec.files, start + spec.files_per_package)))
+             for start in range(0, spec.files, spec.files_per_package)]
+    if jobs <= 1 or len(tasks) <= 1:
+        chunks = [_write_files(task) for task in tasks]
+    else:
+        with ProcessPoolExecutor(max_workers=min(jobs, len(tasks))) as executor:
+            chunks = list(executor.map(_write_files, tasks))
+    stats = CorpusStats()
+    for chunk in chunks:
+        for file_stats in chunk:
+            stats.add(*file_stats)
+
+    with open(target_dir / MANIFEST_NAME, 'w', encoding='utf-8') as f:
+        json.dump({'astra_version': __version__, 'spec': spec.to_dict(), 'stats': stats.to_dict()}, f, indent=2)
+    return stats
+
+
+# ============================================================
+# Riga di comando
+# ============================================================
+
+def main():
+    defaults = CorpusSpec()
+    parser = argparse.ArgumentParser(description='ASTra - Synthetic Java corpus generator')
+    parser.add_argument('output_dir', type=str, help='Directory to write the corpus to (must be empty or missing)')
+    parser.add_argument('--files', type=int, default=defaults.files, help=f'Number of .java files (default: {defaults.files})')
+    parser.add_argument('--classes-per-file', type=int, default=defaults.classes_per_file, help=f'Classes per file (default: {defaults.classes_per_file})')
+    parser.add_argument('--inheritance-depth', type=int, default=defaults.inheritance_depth, help=f'Length of the extends chains, i.e. maximum DIT (default: {defaults.inheritance_depth}, 0 = no inheritance)')
+    parser.add_argument('--methods', type=int, default=defaults.methods_per_class, help=f'Methods per class (default: {defaults.methods_per_class})')
+    parser.add_argument('--method-length', type=int, default=defaults.method_length, help=f'Statements per method, nested ones included (default: {defaults.method_length})')
+    parser.add_argument('--branching', type=float, default=defaults.branching, help=f'Share of statements that are if/for/while/switch/try (default: {defaults.branching})')
+    parser.add_argument('--nesting', type=int, default=defaults.nesting_depth, help=f'Maximum nesting depth of blocks (default: {defaults.nesting_depth})')
+    parser.add_argument('--generics', type=float, default=defaults.generics, help=f'Share of generic fields, locals and methods (default: {defaults.generics})')
+    parser.add_argument('--files-per-package', type=int, default=defaults.files_per_package, help=f'Files per package directory (default: {defaults.files_per_package})')
+    parser.add_argument('--seed', type=int, default=defaults.seed, help=f'Random seed; the same options always give the same files (default: {defaults.seed})')
+    parser.add_argument('--jobs', '-j', type=int, default=1, help='Worker processes writing packages in parallel (default: 1); the output does not depend on it')
+    args = parser.parse_args()
+
+    target_dir = Path(args.output_dir)
+    if target_dir.exists() and any(target_dir.iterdir()):
+        print(f"{C.FAIL}Error: '{target_dir}' is not empty.{C.END}")
+        sys.exit(1)
+    for name in ('files', 'classes_per_file', 'files_per_package'):
+        if getattr(args, name) < 1:
+            print(f"{C.FAIL}Error: --{name.replace('_', '-')} must be at least 1.{C.END}")
+            sys.exit(1)
+    for name in ('inheritance_depth', 'methods', 'method_length', 'nesting'):
+        if getattr(args, name) < 0:
+            print(f"{C.FAIL}Error: --{name.replace('_', '-')} cannot be negative.{C.END}")
+            sys.exit(1)
+    if not (0.0 <= args.branching <= 1.0 and 0.0 <= args.generics <= 1.0):
+        print(f"{C.FAIL}Error: --branching and --generics must be between 0 and 1.{C.END}")
+        sys.exit(1)
+
+    spec = CorpusSpec(files=args.files, classes_per_file=args.classes_per_file,
+                      inheritance_depth=args.inheritance_depth, methods_per_class=args.methods,
+                      method_length=args.method_length, branching=args.branching, nesting_depth=args.nesting,
+                      generics=args.generics, files_per_package=args.files_per_package, seed=args.seed)
+    print(f"{C.BLUE}Writing {spec.files:,} files ({spec.num_classes:,} classes) to {target_dir}...{C.END}")
+    stats = generate_corpus(target_dir, spec, args.jobs)
+    print(f"{C.GREEN}{stats.files:,} files, {stats.classes:,} classes, {stats.methods:,} methods, "
+          f"{stats.lines:,} lines ({stats.bytes / (1024 * 1024):.1f}MB){C.END}")
+
+
+if __name__ == '__main__':
+    main()
@@ -5,27 +5,9 @@ This is required for calculating CK metrics like DIT (Depth of Inheritance Tree)
 """
 
 import os
-from typing import Dict, Set, Optional
-from antlr4 import FileStream, CommonTokenStream
-from antlr4.error.ErrorListener import ErrorListener
+from typing import Dict, List, Set, Optional
 
-# Import generated ANTLR files (will be generated from grammar)
-try:
-    from grammar.Java20Lexer import Java20Lexer
-    from grammar.Java20Parser import Java20Parser
-except ImportError:
-    # Fallback if grammar files are in different location
-    import sys
-    sys.path.append('grammar')
-    from Java20Lexer import Java20Lexer  # pyright: ignore[reportMissingImports]
-    from Java20Parser import Java20Parser  # pyright: ignore[reportMissingImports]
-
-
-class SyntaxErrorListener(ErrorListener):
-    """Custom error listener to suppress syntax errors during graph building"""
-    def syntaxError(self, recognizer, offendingSymbol, line, column, msg, e):
-        # Silently continue - we'll handle errors in the main analysis
-        pass
+from astra.parsing import parse_compilation_unit
 
 
 class InheritanceGraphBuilder:
@@ -38,6 +20,7 @@ class InheritanceGraphBuilder:
         self.inheritance_graph: Dict[str, Optional[str]] = {}  # class_name -> parent_class_name
         self.class_files: Dict[str, str] = {}  # class_name -> file_path
         self.all_classes: Set[str] = set()
+        self.children: Dict[str, Set[str]] = {}  # parent_class_name -> direct subclasses (reverse index)
     
     def extract_class_name(self, ctx) -> Optional[str]:
         """Extract class name from class declaration context"""
@@ -72,9 +55,7 @@ class InheritanceGraphBuilder:
                     parent_class = self.extract_parent_class(normal_class)
                     
                     # Store class information
-                    self.all_classes.add(class_name)
-                    self.class_files[class_name] = file_path
-                    self.inheritance_graph[class_name] = parent_class
+                    self.register_class(class_name, parent_class, file_path)
                     
                     # Visit nested classes
                     if hasattr(normal_class, 'classBody'):
@@ -88,20 +69,24 @@ class InheritanceGraphBuilder:
                                         if nested:
                                             self.visit_class_declaration(nested, file_path)
     
-    def build_graph_from_file(self, file_path: str):
+    def register_class(self, class_name: str, parent_class: Optional[str], file_path: str):
+        """Record a class, its parent (extends edge) and the file that declares it"""
+        self.all_classes.add(class_name)
+        self.class_files[class_name] = file_path
+        
+        # Una ridichiarazione sostituisce l'arco precedente: aggiorna l'indice inverso
+        if class_name in self.inheritance_graph:
+            old_parent = self.inheritance_graph[class_name]
+            if old_parent is not None:
+                self.children[old_parent].discard(class_name)
+        self.inheritance_graph[class_name] = parent_class
+        if parent_class is not None:
+            self.children.setdefault(parent_class, set()).add(class_name)
+    
+    def build_graph_from_file(self, file_path: str, two_stage: bool = False):
         """Parse a Java file and extract inheritance information"""
         try:
-            input_stream = FileStream(file_path, encoding='utf-8')
-            lexer = Java20Lexer(input_stream)
-            lexer.removeErrorListeners()
-            lexer.addErrorListener(SyntaxErrorListener())
-            
-            stream = CommonTokenStream(lexer)
-            parser = Java20Parser(stream)
-            parser.removeErrorListeners()
-            parser.addErrorListener(SyntaxErrorListener())
-            
-            tree = parser.compilationUnit()
+            tree, _ = parse_compilation_unit(file_path, two_stage)
             
             # Visit all class declarations in the compilation unit
             if hasattr(tree, 'ordinaryCompilationUnit'):
@@ -130,13 +115,13 @@ class InheritanceGraphBuilder:
         except Exception as e:
             print(f"Warning: Could not extract graph info from {file_path}: {e}")
     
-    def build_graph_from_directory(self, directory: str):
+    def build_graph_from_directory(self, directory: str, two_stage: bool = False):
         """Scan directory recursively for all Java files and build inheritance graph"""
         for root, dirs, files in os.walk(directory):
             for file in files:
                 if file.endswith('.java'):
                     file_path = os.path.join(root, file)
-                    self.build_graph_from_file(file_path)
+                    self.build_graph_from_file(file_path, two_stage)
     
     def calculate_dit(self, class_name: str) -> int:
         """
@@ -171,11 +156,59 @@ class InheritanceGraphBuilder:
         Calculate Number of Children (NOC) for a class.
         NOC is the count of direct subclasses.
         """
-        count = 0
-        for child, parent in self.inheritance_graph.items():
-            if parent == class_name:
-                count += 1
-        return count
+        return len(self.children.get(class_name, ()))
+    
+    def all_dit(self) -> Dict[str, int]:
+        """
+        Calculate DIT for every class in the graph in a single memoized pass.
+        Each inheritance chain is walked once; cycles are detected once and every
+        class on a cycle gets the cycle length, exactly as calculate_dit does.
+        """
+        graph = self.inheritance_graph
+        dit: Dict[str, int] = {}
+        
+        for start in graph:
+            if start in dit:
+                continue
+            
+            # Risali la catena fino a una radice, a una classe esterna, a un valore noto o a un ciclo
+            path: List[str] = []
+            position: Dict[str, int] = {}
+            current = start
+            while current in graph and current not in dit and current not in position:
+                position[current] = len(path)
+                path.append(current)
+                current = graph[current]
+            
+            if current in position:
+                # Ciclo: ogni classe del ciclo lo percorre tutto prima di fermarsi
+                cycle_start = position[current]
+                cycle_length = len(path) - cycle_start
+                for name in path[cycle_start:]:
+                    dit[name] = cycle_length
+                tail = path[:cycle_start]
+                depth = cycle_length
+            else:
+                last = path.pop()
+                parent = graph[last]
+                if parent is None:
+                    dit[last] = 0                 # radice (java.lang.Object)
+                elif parent in dit:
+                    dit[last] = dit[parent] + 1   # catena già risolta
+                else:
+                    dit[last] = 1                 # genitore esterno al progetto
+                tail = path
+                depth = dit[last]
+            
+            for name in reversed(tail):
+                depth += 1
+                dit[name] = depth
+        
+        return dit
+    
+    def all_noc(self) -> Dict[str, int]:
+        """Calculate NOC for every class that has at least one direct subclass"""
+        return {name: len(children) for name, children in self.children.items() if children}
     
     def get_graph(self) -> Dict[str, Optional[str]]:
         """Get the complete inheritance graph"""
@@ -0,0 +1,288 @@
+"""
+Incremental Analysis Module
+Keeps a manifest of (path, size, mtime, hash) and the per-file results of the
+last run, so that only added or modified files are parsed again.
+
+Change detection uses git when the input directory lives in a work tree and the
+previous run recorded a HEAD: `git diff` against that commit plus `git status`
+yield the candidate files, and the tree is never walked. Files git ignores
+(e.g. generated sources) are listed with `git ls-files --ignored` and always
+re-checked, like uncommitted ones, since git reports none of their changes.
+Otherwise a stat walk
+is used; a file whose size/mtime changed is hashed, so a simple `touch` does
+not trigger a re-parse.
+
+Classes of deleted files are dropped from the inheritance graph, and DIT/NOC
+are recomputed only for the classes whose `extends` edges changed, their
+(old and new) parents and the subtrees below them.
+"""
+
+import os
+import pickle
+import hashlib
+import subprocess
+from pathlib import Path
+from typing import Dict, List, Optional, Set, Tuple
+
+from astra.cache import compute_salt
+from astra.graph_builder import InheritanceGraphBuilder
+from astra.model import ClassMetrics
+from astra.pipeline import APPROXIMATE_ENGINES, FileResult, merge_result
+
+# Incrementare quando cambia la struttura dello stato salvato
+STATE_FORMAT_VERSION = 3
+
+_MISSING = object()
+
+
+def _sha256_file(file_path: str) -> str:
+    digest = hashlib.sha256()
+    with open(file_path, 'rb') as f:
+        digest.update(f.read())
+    return digest.hexdigest()
+
+
+def _git(cwd, *args) -> str:
+    completed = subprocess.run(['git', '-C', str(cwd), *args], capture_output=True,
+                               text=True, timeout=60, check=True)
+    return completed.stdout
+
+
+class FileChanges:
+    """Outcome of comparing the working tree with the manifest of the last run"""
+
+    def __init__(self):
+        self.added: List[str] = []
+        self.modified: List[str] = []
+        self.deleted: List[str] = []
+        self.unchanged = 0
+        self.source = 'walk'  # 'walk' oppure 'git'
+
+    @property
+    def to_parse(self) -> List[str]:
+        return self.added + self.modified
+
+
+class IncrementalSession:
+    """State of an incremental run for one input directory"""
+
+    def __init__(self, input_path: Path, state_dir: str, engine: str = 'visitor'):
+        self.input_path = input_path
+        # visitor e listener danno risultati identici: solo gli engine approssimati fanno stato a sé
+        self.variant = engine if engine in APPROXIMATE_ENGINES else ''
+        self.input_root = input_path.resolve()
+        state_key = hashlib.sha256(str(self.input_root).encode('utf-8')).hexdigest()[:16]
+        # Fuori dalle voci della ResultCache (<cache_dir>/xx/<sha256>.pkl), che condivide la directory
+        self.state_path = Path(state_dir) / 'incremental.state' / f"{state_key}.state"
+
+        self.manifest: Dict[str, Tuple[int, int, str]] = {}  # path -> (size, mtime_ns, sha256)
+        self.results: Dict[str, FileResult] = {}              # path -> result of the last analysis
+        self.git_head: Optional[str] = None
+        self.git_dirty: List[str] = []                        # files git reported as uncommitted or ignored
+        self.has_previous_state = self._load()
+
+        self.changes = FileChanges()
+        self._previous_graph: Dict[str, Optional[str]] = {}
+        self._fresh_classes: Set[str] = set()
+
+    # --- STATO ---
+
+    def _load(self) -> bool:
+        try:
+            with open(self.state_path, 'rb') as f:
+                state = pickle.load(f)
+        except Exception:
+            return False
+        # Stato prodotto da un'altra versione di ASTra/grammatica: ripartiamo da zero
+        if state.get('format') != STATE_FORMAT_VERSION or state.get('salt') != compute_salt():
+            return False
+        # Risultati approssimati (engine lexer) e completi non vanno mescolati
+        if state.get('variant') != self.variant:
+            return False
+        self.manifest = state['manifest']
+        self.results = state['results']
+        self.git_head = state['git_head']
+        self.git_dirty = state['git_dirty']
+        return True
+
+    def save(self):
+        """Persist manifest, per-file results (with resolved DIT/NOC) and the current git HEAD"""
+        snapshot = self._git_snapshot()
+        state = {
+            'format': STATE_FORMAT_VERSION,
+            'salt': compute_salt(),
+            'variant': self.variant,
+            'manifest': self.manifest,
+            'results': self.results,
+            'git_head': snapshot[1] if snapshot else None,
+            'git_dirty': snapshot[2] if snapshot else [],
+        }
+        self.state_path.parent.mkdir(parents=True, exist_ok=True)
+        tmp_path = self.state_path.with_suffix('.tmp')
+        with open(tmp_path, 'wb') as f:
+            pickle.dump(state, f, protocol=pickle.HIGHEST_PROTOCOL)
+        os.replace(tmp_path, self.state_path)
+
+    # --- RILEVAMENTO MODIFICHE ---
+
+    def detect_changes(self) -> FileChanges:
+        """Classify the .java files of the input directory as added/modified/deleted/unchanged"""
+        changes = FileChanges()
+        candidates = self._git_candidates() if self.has_previous_state else None
+
+        if candidates is None:
+            current = [str(f) for f in self.input_path.rglob('*.java')]
+            current_set = set(current)
+            to_check = current
+            changes.deleted = [p for p in self.manifest if p not in current_set]
+        else:
+            changes.source = 'git'
+            to_check = [p for p in candidates if os.path.isfile(p)]
+            changes.deleted = [p for p in candidates if p in self.manifest and not os.path.isfile(p)]
+
+        for file_path in to_check:
+            status = self._classify(file_path)
+            if status == 'added':
+                changes.added.append(file_path)
+            elif status == 'modified':
+                changes.modified.append(file_path)
+        changes.unchanged = len(self.manifest) - len(changes.added) - len(changes.modified)
+        for file_path in changes.deleted:
+            del self.manifest[file_path]
+        changes.unchanged -= len(changes.deleted)
+
+        self.changes = changes
+        return changes
+
+    def _classify(self, file_path: str) -> str:
+        stat = os.stat(file_path)
+        previous = self.manifest.get(file_path)
+        if previous is not None and previous[0] == stat.st_size and previous[1] == stat.st_mtime_ns:
+            return 'unchanged'
+        digest = _sha256_file(file_path)
+        self.manifest[file_path] = (stat.st_size, stat.st_mtime_ns, digest)
+        if previous is None or file_path not in self.results:
+            return 'added'
+        return 'modified' if previous[2] != digest else 'unchanged'
+
+    def _git_snapshot(self) -> Optional[Tuple[Path, str, List[str]]]:
+        """(repository root, HEAD, uncommitted or ignored .java paths), or None when git cannot be used"""
+        try:
+            root = Path(_git(self.input_root, 'rev-parse', '--show-toplevel').strip())
+            head = _git(root, 'rev-parse', 'HEAD').strip()
+            scope = os.path.relpath(self.input_root, root)
+            # Porcelain -z: "XY path"; per rename/copy la voce successiva è il percorso originale
+            entries = _git(root, 'status', '--porcelain', '-z', '--untracked-files=all', '--', scope).split('\0')
+            # I file ignorati non compaiono in status: modifiche e cancellazioni passerebbero inosservate
+            ignored = _git(root, 'ls-files', '-z', '--others', '--ignored', '--exclude-standard',
+                           '--', scope).split('\0')
+        except (OSError, subprocess.SubprocessError):
+            return None
+        uncommitted = []
+        i = 0
+        while i < len(entries):
+            entry = entries[i]
+            i += 1
+            if len(entry) < 4:
+                continue
+            uncommitted.append(entry[3:])
+            if entry[0] in 'RC' and i < len(entries):
+                uncommitted.append(entries[i])
+                i += 1
+        return root, head, self._to_input_paths(root, uncommitted + ignored)
+
+    def _git_candidates(self) -> Optional[List[str]]:
+        """
+        Paths (as rglob would spell them) that may have changed since the last run
+        according to git, or None when git cannot be used and the tree must be walked.
+        """
+        if not self.git_head:
+            return None
+        snapshot = self._git_snapshot()
+        if snapshot is None:
+            return None
+        root, head, dirty = snapshot
+        committed = []
+        if head != self.git_head:
+            try:
+                scope = os.path.relpath(self.input_root, root)
+                committed = _git(root, 'diff', '--name-only', '-z', self.git_head, head, '--', scope).split('\0')
+            except (OSError, subprocess.SubprocessError):
+                return None  # es. il commit precedente non esiste più (rebase, gc)
+        # Anche i file "sporchi" dell'esecuzione precedente vanno ricontrollati:
+        # se nel frattempo sono tornati allo stato di HEAD, git non li segnala più
+        return list(dict.fromkeys(self._to_input_paths(root, committed) + dirty + self.git_dirty))
+
+    def _to_input_paths(self, root: Path, names: List[str]) -> List[str]:
+        """Map repository-relative names to .java paths spelled like rglob(input_path)"""
+        paths = []
+        for name in names:
+            if not name.endswith('.java'):
+                continue
+            try:
+                relative = (root / name).relative_to(self.input_root)
+            except ValueError:
+                continue
+            paths.append(str(self.input_path / relative))
+        return paths
+
+    # --- GRAFO E METRICHE GLOBALI ---
+
+    def merge(self, fresh_results: List[FileResult], graph_builder: InheritanceGraphBuilder,
+              classes: Dict[str, ClassMetrics]):
+        """
+        Replace the results of re-parsed files, drop deleted ones and rebuild the
+        global graph/class table from all current results (in manifest order).
+        """
+        previous_builder = InheritanceGraphBuilder()
+        for result in self.results.values():
+            merge_result(result, previous_builder, {})
+        self._previous_graph = previous_builder.inheritance_graph
+
+        for file_path in self.changes.deleted:
+            self.results.pop(file_path, None)
+        for result in fresh_results:
+            self.results[result.file_path] = result
+            self._fresh_classes.update(result.classes)
+
+        ordered = {p: self.results[p] for p in self.manifest if p in self.results}
+        self.results = ordered
+        for result in ordered.values():
+            merge_result(result, graph_builder, classes)
+
+    def resolve_dit_noc(self, graph_builder: InheritanceGraphBuilder, classes: Dict[str, ClassMetrics]) -> int:
+        """
+        Recompute DIT/NOC only where the inheritance graph changed.
+        Returns the number of classes whose DIT or NOC was recomputed.
+        """
+        old_graph = self._previous_graph
+        new_graph = graph_builder.inheritance_graph
+        changed = {name for name in set(old_graph) | set(new_graph)
+                   if old_graph.get(name, _MISSING) != new_graph.get(name, _MISSING)}
+
+        children = graph_builder.children  # indice inverso mantenuto dal builder
+
+        # DIT: classi con arco cambiato e tutto il sottoalbero sottostante
+        dit_affected: Set[str] = set()
+        stack = list(changed | self._fresh_classes)
+        while stack:
+            name = stack.pop()
+            if name in dit_affected:
+                continue
+            dit_affected.add(name)
+            stack.extend(children.get(name, ()))
+
+        # NOC: classi con arco cambiato, i loro genitori vecchi e nuovi
+        noc_affected = set(changed) | self._fresh_classes
+        for name in changed:
+            for parent in (old_graph.get(name), new_graph.get(name)):
+                if parent is not None:
+                    noc_affected.add(parent)
+
+        for name in dit_affected:
+            if name in classes:
+                classes[name].dit = graph_builder.calculate_dit(name)
+        for name in noc_affected:
+            if name in classes:
+                classes[name].noc = graph_builder.calculate_noc(name)
+        return len(dit_affected | noc_affected)
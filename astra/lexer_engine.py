@@ -0,0 +1,289 @@
+"""
+Lexer Engine Module
+Fast, approximate analysis that runs only Java20Lexer (no parser, no tree).
+
+A small brace/keyword state machine over the default-channel tokens finds
+class and method boundaries:
+- at type level, `class`/`interface`/`enum`/`record` open a type header and
+  an identifier followed by a parenthesized list and `{` (or `;`) is a method;
+- inside a method, every token goes through MetricsVisitor.visitTerminal, so
+  operators, operands and the `&&`/`||`/`?` increments follow the same rules as
+  the full parse; `if`, `while` (not the one closing a do-while), `for` and
+  `case` add the other CC increments;
+- class and method line ranges feed the usual LOC calculation.
+
+Known approximations: anonymous and local classes are counted as part of the
+enclosing method, interface methods are ignored, enum/record methods go to the
+enclosing class, CBO (external types) is not collected and the quirks of the
+visitor (methods skipped after a nested class) are not reproduced.
+`benchmark.py drift` measures how far the numbers move on a real corpus.
+"""
+
+from typing import Dict, List, Optional, Tuple
+
+try:
+    from grammar.Java20Lexer import Java20Lexer
+except ImportError:
+    import sys
+    sys.path.append('grammar')
+    from Java20Lexer import Java20Lexer  # pyright: ignore[reportMissingImports]
+
+from astra.metrics_visitor import MetricsVisitor
+from astra.model import ClassMetrics, MethodMetrics
+from astra.parsing import lex_file
+from astra import profiling
+
+TYPE_KEYWORDS = {'class', 'interface', 'enum', 'record'}
+# Token ammessi tra la ')' dei parametri e il corpo: dimensioni array legacy e clausola throws
+THROWS_TOKENS = {'throws', '.', ',', '<', '>', '?', '&', 'extends', 'super', '@'}
+
+
+class _TokenNode:
+    """Minimal terminal-node stand-in, so tokens go through MetricsVisitor.visitTerminal"""
+    __slots__ = ('symbol',)
+
+    def __init__(self, symbol):
+        self.symbol = symbol
+
+    def getSymbol(self):
+        return self.symbol
+
+    def getText(self):
+        return self.symbol.text
+
+
+class _Scope:
+    """An open `{`: a type body, a method body or a plain block"""
+    __slots__ = ('kind', 'class_metrics', 'method', 'in_constants')
+
+    def __init__(self, kind: str, class_metrics: Optional[ClassMetrics] = None,
+                 method: Optional[MethodMetrics] = None):
+        self.kind = kind                    # 'class' | 'interface' | 'enum' | 'record' | 'method' | 'block'
+        self.class_metrics = class_metrics  # classe che riceve i metodi (per 'method')
+        self.method = method                # metodo in corso (per 'method' e i blocchi al suo interno)
+        self.in_constants = kind == 'enum'  # lista delle costanti enum, fino al primo ';'
+
+
+class TokenScanner:
+    """State machine over the tokens of one file"""
+
+    def __init__(self, file_path: str):
+        self.file_path = file_path
+        self.metrics = MetricsVisitor({}, {})
+        self.metrics.current_file_path = file_path
+        self.extends: Dict[str, Optional[str]] = {}
+        self.scopes: List[_Scope] = []
+        self.do_depths: List[int] = []  # profondità dei `do` in attesa del loro `while`
+        self.prev = None
+        self._reset_member()
+
+    def _reset_member(self):
+        self.member = []           # token della dichiarazione corrente a livello di tipo
+        self.parens = 0
+        self.method_name: Optional[str] = None
+        self.params_closed = False
+        self.in_throws = False
+        self.initialized = False   # `=` fuori dalle parentesi: è un campo con inizializzatore
+        self.pending_type: Optional[str] = None
+        self.type_name: Optional[str] = None
+        self.angle = 0
+        self.in_extends = False
+        self.superclass: Optional[str] = None
+
+    # --- SCANSIONE ---
+
+    def scan(self, tokens) -> Tuple[Dict[str, Optional[str]], Dict[str, ClassMetrics]]:
+        with profiling.step('visit'):
+            for i, tok in enumerate(tokens):
+                top = self.scopes[-1] if self.scopes else None
+                if top is not None and top.kind in ('method', 'block') and top.method is not None:
+                    self._body_token(tok, top)
+                elif top is not None and top.kind in ('method', 'block'):
+                    self._skip_token(tok)
+                else:
+                    self._member_token(tokens, i, tok, top)
+                self.prev = tok
+        self.metrics.current_method = None
+        self.metrics.finalize_file(self.file_path)
+        return self.extends, self.metrics.get_results()
+
+    def _skip_token(self, tok):
+        """Block outside any method (initializer, lambda or array in a field, enum constant body)"""
+        if tok.text == '{':
+            self.scopes.append(_Scope('block'))
+        elif tok.text == '}':
+            popped = self.scopes.pop()
+            if popped.kind == 'method':
+                self.metrics.current_method = None
+            if not self.scopes or self.scopes[-1].kind not in ('method', 'block'):
+                self._reset_member()
+
+    def _body_token(self, tok, scope: _Scope):
+        m = self.metrics
+        text = tok.text
+        if text == '{':
+            self.scopes.append(_Scope('block', method=scope.method))
+        elif text in ('if', 'for', 'case'):
+            m._increment_complexity()
+        elif text == 'do':
+            self.do_depths.append(len(self.scopes))
+        elif text == 'while':
+            closes_do = (self.do_depths and self.do_depths[-1] == len(self.scopes)
+                         and self.prev is not None and self.prev.text in ('}', ';'))
+            if closes_do:
+                self.do_depths.pop()
+            else:
+                m._increment_complexity()
+        m.visitTerminal(_TokenNode(tok))
+        if text == '}':
+            self.scopes.pop()
+            if scope.kind == 'method':
+                self._finish_method(scope.class_metrics, tok)
+
+    def _member_token(self, tokens, i: int, tok, top: Optional[_Scope]):
+        text = tok.text
+        self.member.append(tok)
+
+        if self.parens:
+            if text == '(':
+                self.parens += 1
+            elif text == ')':
+                self.parens -= 1
+                self.params_closed = self.parens == 0 and self.method_name is not None
+            return
+
+        if self.params_closed and text not in ('{', ';', '[', ']'):
+            if text == 'throws':
+                self.in_throws = True
+            elif not (self.in_throws and (text in THROWS_TOKENS or tok.type == Java20Lexer.Identifier)):
+                # Non era un metodo (es. `int value() default 1;` in un'annotazione)
+                self.method_name = None
+                self.params_closed = False
+
+        if text == '(':
+            self.parens = 1
+            if self.pending_type is None and self._looks_like_method(top):
+                self.method_name = self.member[-2].text
+        elif text == '=':
+            self.initialized = True
+        elif text == '{':
+            self.member.pop()
+            if self.pending_type is not None:
+                self._open_type(top)
+            elif self.params_closed:
+                self._open_method(top, tok)
+            else:
+                self.scopes.append(_Scope('block'))
+        elif text == ';':
+            if self.params_closed:
+                self.member.pop()
+                self._open_method(top, tok)  # metodo astratto: nessun corpo
+            elif top is not None and top.in_constants:
+                top.in_constants = False
+            self._reset_member()
+        elif text == '}':
+            if top is not None:
+                self.scopes.pop()
+                if top.kind == 'class' and top.class_metrics is not None:
+                    top.class_metrics.end_line = tok.line
+            self._reset_member()
+        elif self.pending_type is not None:
+            self._type_header_token(tok)
+        elif text in TYPE_KEYWORDS and self._opens_type(tokens, i):
+            self.pending_type = text
+
+    # --- TIPI ---
+
+    def _opens_type(self, tokens, i: int) -> bool:
+        if self.prev is not None and self.prev.text == '.':
+            return False  # Foo.class
+        if tokens[i].text != 'record':
+            return True
+        # `record` è una parola chiave contestuale: record Nome( oppure record Nome<
+        return (i + 2 < len(tokens) and tokens[i + 1].type == Java20Lexer.Identifier
+                and tokens[i + 2].text in ('(', '<'))
+
+    def _type_header_token(self, tok):
+        text = tok.text
+        if self.type_name is None:
+            if tok.type == Java20Lexer.Identifier:
+                self.type_name = text
+            return
+        if text == '<':
+            self.angle += 1
+        elif text == '>':
+            self.angle -= 1
+        elif self.angle == 0 and text in ('extends', 'implements', 'permits'):
+            self.in_extends = text == 'extends' and self.pending_type == 'class'
+        elif self.in_extends and self.angle == 0 and tok.type == Java20Lexer.Identifier:
+            # Ultimo identificatore fuori dagli argomenti di tipo: `extends a.b.Base<T>` -> Base
+            self.superclass = text
+
+    def _open_type(self, top: Optional[_Scope]):
+        scope = _Scope(self.pending_type)
+        if self.pending_type == 'class' and self.type_name:
+            m = self.metrics
+            class_metrics = ClassMetrics(self.type_name, self.file_path)
+            class_metrics.start_line = self.member[0].line if self.member else 0
+            m.classes[self.type_name] = class_metrics
+            m.current_file_classes.append(class_metrics)
+            scope.class_metrics = class_metrics
+            # Come il builder: solo classi top-level o annidate direttamente in classi
+            if all(s.kind == 'class' for s in self.scopes):
+                self.extends[self.type_name] = self.superclass
+        self.scopes.append(scope)
+        self._reset_member()
+
+    # --- METODI ---
+
+    def _looks_like_method(self, top: Optional[_Scope]) -> bool:
+        """`name(` at type level, outside enum constants, field initializers and annotations"""
+        if top is None or top.kind not in TYPE_KEYWORDS or top.in_constants:
+            return False
+        if len(self.member) < 2 or self.member[-2].type != Java20Lexer.Identifier:
+            return False
+        if self.initialized:
+            return False
+        j = len(self.member) - 2
+        while j >= 2 and self.member[j - 1].text == '.':
+            j -= 2
+        return not (j >= 1 and self.member[j - 1].text == '@')
+
+    def _owner(self) -> Optional[ClassMetrics]:
+        """Class that receives the method: interface methods are not counted (as in the visitor)"""
+        for scope in reversed(self.scopes):
+            if scope.kind == 'interface':
+                return None
+            if scope.kind == 'class':
+                return scope.class_metrics
+        return None
+
+    def _open_method(self, top: Optional[_Scope], tok):
+        owner = self._owner()
+        method = None
+        if owner is not None:
+            method = MethodMetrics(self.method_name, owner.class_name)
+            method.start_line = self.member[0].line if self.member else tok.line
+        self.metrics.current_method = method
+        for header_tok in self.member:
+            self.metrics.visitTerminal(_TokenNode(header_tok))
+        self.metrics.visitTerminal(_TokenNode(tok))
+        self._reset_member()
+
+        if tok.text == '{':
+            self.scopes.append(_Scope('method', class_metrics=owner, method=method))
+        else:
+            self._finish_method(owner, tok)
+
+    def _finish_method(self, owner: Optional[ClassMetrics], tok):
+        method = self.metrics.current_method
+        self.metrics.current_method = None
+        if method is None or owner is None:
+            return
+        method.end_line = tok.line
+        owner.add_method(method)  # Halstead in blocco in finalize_file
+
+
+def analyze_tokens(file_path: str) -> Tuple[Dict[str, Optional[str]], Dict[str, ClassMetrics]]:
+    """Lex a Java file and return (extends edges, ClassMetrics) without parsing it"""
+    return TokenScanner(file_path).scan(lex_file(file_path))
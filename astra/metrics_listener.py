@@ -0,0 +1,238 @@
+"""
+Metrics Listener Module
+Parse-tree-free variant of the single-parse analysis.
+
+The listener is attached to the parser while it runs with buildParseTrees = False:
+rule contexts still know their parent, start and stop token, but are never linked
+into a tree, so memory stays bounded by the nesting depth instead of the file size.
+The enter/exit/terminal events are turned into exactly the same state changes
+MetricsVisitor performs while visiting a tree (including its quirks: skipped
+methods outside a class, current_class reset after a nested class, abort on the
+first error), and the extends edges are collected with the same rules as
+InheritanceGraphBuilder.
+"""
+
+from typing import Dict, Optional
+
+from antlr4 import Token
+from antlr4.tree.Tree import ParseTreeListener
+
+try:
+    from grammar.Java20Parser import Java20Parser
+except ImportError:
+    import sys
+    sys.path.append('grammar')
+    from Java20Parser import Java20Parser  # pyright: ignore[reportMissingImports]
+
+from astra.graph_builder import InheritanceGraphBuilder
+from astra.metrics_visitor import CONTROL_STATEMENT_RULES, MetricsVisitor
+from astra.model import ClassMetrics, MethodMetrics
+
+P = Java20Parser
+
+
+def _rule(ctx) -> int:
+    return ctx.getRuleIndex() if ctx is not None else -1
+
+
+def _text(ctx) -> str:
+    """Equivalent of ctx.getText() without children: default-channel tokens between start and stop"""
+    start, stop = ctx.start, ctx.stop
+    if start is None or stop is None or stop.tokenIndex < start.tokenIndex:
+        return ''
+    tokens = ctx.parser.getTokenStream().tokens
+    return ''.join(t.text for t in tokens[start.tokenIndex:stop.tokenIndex + 1]
+                   if t.channel == Token.DEFAULT_CHANNEL)
+
+
+class _ClassFrame:
+    """Bookkeeping for a normalClassDeclaration whose rule is still running"""
+    __slots__ = ('in_graph', 'registered', 'name', 'parent', 'class_metrics')
+
+    def __init__(self, in_graph: bool):
+        self.in_graph = in_graph    # raggiungibile dalla visita di InheritanceGraphBuilder
+        self.registered = False
+        self.name: Optional[str] = None
+        self.parent: Optional[str] = None
+        self.class_metrics: Optional[ClassMetrics] = None
+
+
+class MetricsListener(ParseTreeListener):
+    """
+    Collects ClassMetrics and extends edges of one file from parser events.
+    Use with parse_compilation_unit(file_path, listener=...) and then call finish().
+    """
+
+    def __init__(self, file_path: str):
+        self.file_path = file_path
+        self.reset()
+
+    def reset(self):
+        """Discard everything collected so far (used before an LL re-parse)"""
+        self.metrics = MetricsVisitor({}, {})
+        self.metrics.current_file_path = self.file_path
+        self.graph_builder = InheritanceGraphBuilder()
+        self.error: Optional[Exception] = None
+        self._skipped = None  # metodo che il visitor non visiterebbe (nessuna classe corrente)
+        self._classes: Dict[int, _ClassFrame] = {}  # id(ctx) -> frame delle classi aperte
+
+    def finish(self):
+        """Per-file finalization, reported like MetricsVisitor.analyze_tree"""
+        try:
+            if self.error is not None:
+                raise self.error
+            self.metrics.finalize_file(self.file_path)
+        except Exception as e:
+            import traceback
+            print(f"Error analyzing tree for {self.file_path}: {e}")
+            traceback.print_exc()
+            self.metrics.complete_methods()
+
+    def _tracking(self) -> bool:
+        # Dopo il primo errore il visitor interrompe la visita: le metriche si fermano lì,
+        # mentre gli archi extends continuano (il builder lavora indipendentemente)
+        return self.error is None and self._skipped is None
+
+    # --- EVENTI DEL PARSER ---
+
+    def enterEveryRule(self, ctx):
+        rule = ctx.getRuleIndex()
+        if rule == P.RULE_normalClassDeclaration:
+            self._classes[id(ctx)] = _ClassFrame(self._in_graph(ctx))
+        elif rule == P.RULE_classBody:
+            # Nome e superclasse sono noti: registra prima delle classi annidate, come il builder
+            frame = self._classes.get(id(ctx.parentCtx))
+            if frame is not None and frame.in_graph and frame.name is not None:
+                self.graph_builder.register_class(frame.name, frame.parent, self.file_path)
+                frame.registered = True
+
+        if self._tracking():
+            try:
+                self._enter_metrics(ctx, rule)
+            except Exception as e:
+                self.error = e
+
+    def exitEveryRule(self, ctx):
+        rule = ctx.getRuleIndex()
+        if self._skipped is ctx:
+            self._skipped = None
+        elif self._tracking():
+            try:
+                self._exit_metrics(ctx, rule)
+            except Exception as e:
+                self.error = e
+
+        if rule == P.RULE_typeIdentifier:
+            self._graph_type_identifier(ctx)
+        elif rule == P.RULE_normalClassDeclaration:
+            frame = self._classes.pop(id(ctx), None)
+            # Il visitor legge le righe all'ingresso: valgono anche se la visita si è interrotta dopo
+            if frame is not None and frame.class_metrics is not None:
+                frame.class_metrics.end_line = ctx.stop.line
+
+    def visitTerminal(self, node):
+        if not self._tracking():
+            return
+        try:
+            if node.symbol.type == P.CASE and _rule(node.parentCtx) == P.RULE_switchLabel:
+                self.metrics._increment_complexity()
+            self.metrics.visitTerminal(node)
+        except Exception as e:
+            self.error = e
+
+    def visitErrorNode(self, node):
+        pass
+
+    # --- METRICHE (stesse transizioni di MetricsVisitor) ---
+
+    def _enter_metrics(self, ctx, rule: int):
+        if rule == P.RULE_methodDeclaration:
+            self._enter_method(ctx, "unknown")
+        elif rule == P.RULE_constructorDeclaration:
+            self._enter_method(ctx, "<init>")
+        elif rule in CONTROL_STATEMENT_RULES and _rule(ctx.parentCtx) == P.RULE_statement:
+            self.metrics._increment_complexity()
+
+    def _enter_method(self, ctx, default_name: str):
+        m = self.metrics
+        if not m.current_class:
+            self._skipped = ctx
+            return
+        # Il nome arriva più avanti (identifier / simpleTypeName)
+        m.current_method = MethodMetrics(default_name, m.current_class.class_name)
+        m.current_method.start_line = ctx.start.line
+
+    def _exit_metrics(self, ctx, rule: int):
+        m = self.metrics
+        if rule == P.RULE_typeIdentifier:
+            frame = self._classes.get(id(ctx.parentCtx))
+            if frame is not None:
+                class_ctx = ctx.parentCtx
+                m.current_class = ClassMetrics(_text(ctx), m.current_file_path)
+                m.current_class.start_line = class_ctx.start.line
+                m.classes[m.current_class.class_name] = m.current_class
+                m.current_file_classes.append(m.current_class)
+                frame.class_metrics = m.current_class
+
+        elif rule == P.RULE_normalClassDeclaration:
+            frame = self._classes.get(id(ctx))
+            if frame is not None and frame.class_metrics is not None:
+                m.current_class = None
+
+        elif rule == P.RULE_identifier:
+            declarator = ctx.parentCtx
+            if _rule(declarator) == P.RULE_methodDeclarator:
+                header = declarator.parentCtx
+                if _rule(header) == P.RULE_methodHeader and _rule(header.parentCtx) == P.RULE_methodDeclaration:
+                    m.current_method.method_name = _text(ctx)
+
+        elif rule == P.RULE_simpleTypeName:
+            declarator = ctx.parentCtx
+            if _rule(declarator) == P.RULE_constructorDeclarator and \
+                    _rule(declarator.parentCtx) == P.RULE_constructorDeclaration:
+                m.current_method.method_name = _text(ctx)
+
+        elif rule == P.RULE_unannType:
+            parent = ctx.parentCtx
+            declares = _rule(parent) == P.RULE_fieldDeclaration or (
+                _rule(parent) == P.RULE_localVariableType and
+                _rule(parent.parentCtx) == P.RULE_localVariableDeclaration)
+            if declares and m.current_class:
+                m._check_type_name(m._type_name_from_text(_text(ctx)))
+
+        elif rule in (P.RULE_methodDeclaration, P.RULE_constructorDeclaration):
+            # Stesso ordine di MetricsVisitor._exit_method (Halstead arriva con finalize_file)
+            m.current_class.add_method(m.current_method)
+            m.current_method.end_line = ctx.stop.line
+            m.current_method = None
+
+    # --- GRAFO DI EREDITARIETÀ (stesse regole di InheritanceGraphBuilder) ---
+
+    def _in_graph(self, ctx) -> bool:
+        """True if InheritanceGraphBuilder would reach this normalClassDeclaration"""
+        declaration = ctx.parentCtx
+        if _rule(declaration) != P.RULE_classDeclaration:
+            return False
+        holder = declaration.parentCtx
+        if _rule(holder) == P.RULE_topLevelClassOrInterfaceDeclaration:
+            return _rule(holder.parentCtx) == P.RULE_ordinaryCompilationUnit
+        if _rule(holder) == P.RULE_classMemberDeclaration:
+            body_declaration = holder.parentCtx
+            body = body_declaration.parentCtx if body_declaration is not None else None
+            if _rule(body) != P.RULE_classBody:
+                return False
+            owner = self._classes.get(id(body.parentCtx))
+            return owner is not None and owner.registered
+        return False
+
+    def _graph_type_identifier(self, ctx):
+        parent = ctx.parentCtx
+        frame = self._classes.get(id(parent))
+        if frame is not None:
+            frame.name = _text(ctx)
+            return
+        # classExtends -> classType -> typeIdentifier
+        if _rule(parent) == P.RULE_classType and _rule(parent.parentCtx) == P.RULE_classExtends:
+            frame = self._classes.get(id(parent.parentCtx.parentCtx))
+            if frame is not None:
+                frame.parent = _text(ctx)
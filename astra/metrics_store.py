@@ -0,0 +1,94 @@
+"""
+Metrics Store Module
+Columnar (NumPy) view of the final class metrics.
+
+Filled in one pass once DIT/NOC are resolved, it replaces the separate Python
+passes every consumer used to make over the list of ClassMetrics: KPI totals,
+MI buckets, critical-class counts, chart series and the report orderings all
+run as vectorized operations on the columns below.
+Row i of every column describes classes[i].
+"""
+
+from typing import List, Tuple
+
+import numpy as np
+
+from astra.model import ClassMetrics
+
+# Soglie MI usate da riepilogo, grafico di distribuzione e conteggio delle classi critiche
+MI_GREEN = 85
+MI_RED = 65
+CRITICAL_WMC = 20
+
+
+class MetricsStore:
+    """Class metrics as NumPy columns, plus the orderings and aggregates the outputs need"""
+
+    def __init__(self, classes: List[ClassMetrics]):
+        self.classes = classes
+        n = len(classes)
+        counts = np.zeros((n, 6), dtype=np.int64)    # wmc, dit, noc, cbo, loc, metodi
+        values = np.zeros((n, 4), dtype=np.float64)  # mi, V, D, E
+        for i, c in enumerate(classes):
+            counts[i] = (c.wmc, c.dit, c.noc, c.cbo, c.loc, len(c.methods))
+            halstead = c.aggregated_halstead
+            if halstead:
+                values[i] = (c.maintainability_index, halstead.get('V', 0.0),
+                             halstead.get('D', 0.0), halstead.get('E', 0.0))
+            else:
+                values[i, 0] = c.maintainability_index
+
+        self.names = np.array([c.class_name for c in classes], dtype=str)
+        self.wmc, self.dit, self.noc, self.cbo, self.loc, self.methods = counts.T
+        self.mi, self.volume, self.difficulty, self.effort = values.T
+
+    def __len__(self) -> int:
+        return len(self.classes)
+
+    # --- AGGREGATI ---
+
+    @property
+    def total_loc(self) -> int:
+        return int(self.loc.sum())
+
+    @property
+    def total_methods(self) -> int:
+        return int(self.methods.sum())
+
+    @property
+    def avg_mi(self) -> float:
+        return float(self.mi.mean()) if len(self) else 0.0
+
+    @property
+    def critical_count(self) -> int:
+        """Classes shown as critical on the dashboard: MI < 65 or WMC > 20"""
+        return int(np.count_nonzero((self.mi < MI_RED) | (self.wmc > CRITICAL_WMC)))
+
+    def mi_buckets(self) -> Tuple[int, int, int]:
+        """(green > 85, 65 <= yellow <= 85, red < 65)"""
+        mi = self.mi
+        return (int(np.count_nonzero(mi > MI_GREEN)),
+                int(np.count_nonzero((mi >= MI_RED) & (mi <= MI_GREEN))),
+                int(np.count_nonzero(mi < MI_RED)))
+
+    # --- SERIE PER I GRAFICI ---
+
+    def scatter_arrays(self) -> Tuple[np.ndarray, np.ndarray, np.ndarray]:
+        """(WMC, Volume, name) columns of the classes with both metrics > 0, in class order"""
+        mask = (self.volume > 0) & (self.wmc > 0)
+        return self.wmc[mask], self.volume[mask], self.names[mask]
+
+    # --- ORDINAMENTI (stabili, come sorted()) ---
+
+    def top_by_wmc(self, n: int) -> np.ndarray:
+        """Row indices of the n classes with the highest WMC (ties in class order)"""
+        return np.argsort(-self.wmc, kind='stable')[:n]
+
+    def name_order(self) -> np.ndarray:
+        """Row indices sorted by class name"""
+        return np.argsort(self.names, kind='stable')
+
+    def most_critical(self, n: int) -> np.ndarray:
+        """Row indices of the Hall of Shame: lowest MI, then highest WMC, then name"""
+        # lexsort: l'ultima chiave è quella primaria
+        return np.lexsort((self.names, -self.wmc, self.mi))[:n]
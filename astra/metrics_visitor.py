@@ -1,14 +1,16 @@
 """
 Metrics Visitor Module - Pass 2 (FINAL FIX)
 Core visitor that traverses the AST to calculate all software metrics.
-Fixes: Precise LOC calculation based on Class range, Recursive traversal.
+Fixes: Precise LOC calculation based on Class range, Non-recursive traversal (explicit stack).
 """
 
 import re
-from typing import Dict, List, Set, Optional
+import sys
+from typing import Callable, Dict, List, Optional
 from collections import defaultdict
-from antlr4 import FileStream, CommonTokenStream
-from antlr4.error.ErrorListener import ErrorListener
+
+from antlr4 import ParserRuleContext
+from antlr4.tree.Tree import TerminalNodeImpl
 
 try:
     from grammar.Java20Lexer import Java20Lexer
@@ -21,97 +23,33 @@ except ImportError:
     from Java20Parser import Java20Parser # pyright: ignore[reportMissingImports]
     from Java20ParserVisitor import Java20ParserVisitor # pyright: ignore[reportMissingImports]
 
-from astra.calculator import HalsteadCalculator, ComplexityCalculator, MaintainabilityCalculator, CKCalculator
-
+from astra.model import ClassMetrics, MethodMetrics, calculate_classes_metrics, calculate_methods_halstead
+from astra.parsing import parse_compilation_unit
+from astra import profiling, tokens
+from astra.tokens import OPERATOR, OPERAND, CC_INCREMENT
 
-class SyntaxErrorListener(ErrorListener):
-    def syntaxError(self, recognizer, offendingSymbol, line, column, msg, e):
-        pass
+# Classificazione di ogni tipo di token, calcolata una volta dal vocabolario del lexer
+TOKEN_CLASSES = tokens.build_token_classes(Java20Lexer)
 
+# Figli diretti di `statement` che incrementano la CC (do/switch/try stanno sotto
+# statementWithoutTrailingSubstatement e non sono mai stati contati qui)
+CONTROL_STATEMENT_RULES = frozenset({
+    Java20Parser.RULE_ifThenStatement, Java20Parser.RULE_ifThenElseStatement,
+    Java20Parser.RULE_whileStatement, Java20Parser.RULE_forStatement,
+})
 
-class MethodMetrics:
-    def __init__(self, method_name: str, class_name: str):
-        self.method_name = method_name
-        self.class_name = class_name
-        self.operators: List[str] = []
-        self.operands: List[str] = []
-        self.cyclomatic_complexity = 1
-        self.loc = 0
-        self.start_line = 0
-        self.end_line = 0
-        self.halstead: Optional[Dict] = None
-    
-    def calculate_halstead(self):
-        n1 = len(set(self.operators))
-        n2 = len(set(self.operands))
-        N1 = len(self.operators)
-        N2 = len(self.operands)
-        self.halstead = HalsteadCalculator.calculate(n1, n2, N1, N2)
-
-
-class ClassMetrics:
-    def __init__(self, class_name: str, file_path: str):
-        self.class_name = class_name
-        self.file_path = file_path
-        self.methods: Dict[str, MethodMetrics] = {}
-        self.loc = 0
-        # Nuovi campi per LOC precisa di classe
-        self.start_line = 0
-        self.end_line = 0
-        
-        self.external_types: Set[str] = set()
-        self.wmc = 0
-        self.dit = 0
-        self.noc = 0
-        self.cbo = 0
-        self.maintainability_index = 0.0
-        self.aggregated_halstead: Optional[Dict] = None
-    
-    def add_method(self, method: MethodMetrics):
-        self.methods[method.method_name] = method
-    
-    def calculate_class_metrics(self, inheritance_graph):
-        all_operators = []
-        all_operands = []
-        method_complexities = []
-        
-        for method in self.methods.values():
-            all_operators.extend(method.operators)
-            all_operands.extend(method.operands)
-            method_complexities.append(method.cyclomatic_complexity)
-            # Nota: La LOC di classe ora viene calcolata separatamente
-        
-        if all_operators or all_operands:
-            n1 = len(set(all_operators))
-            n2 = len(set(all_operands))
-            N1 = len(all_operators)
-            N2 = len(all_operands)
-            self.aggregated_halstead = HalsteadCalculator.calculate(n1, n2, N1, N2)
-        
-        self.wmc = CKCalculator.calculate_wmc(method_complexities)
-        self.cbo = CKCalculator.calculate_cbo(self.external_types)
-        
-        volume = self.aggregated_halstead.get('V', 0.0) if self.aggregated_halstead else 0.0
-        avg_cc = sum(method_complexities) / len(method_complexities) if method_complexities else 1
-        
-        # Usa la LOC di classe calcolata (non la somma dei metodi)
-        self.maintainability_index = MaintainabilityCalculator.calculate(volume, int(avg_cc), self.loc)
+# Valore di ritorno di un'azione di ingresso: il sottoalbero non va visitato
+_SKIP_SUBTREE = object()
 
 
 class MetricsVisitor(Java20ParserVisitor):
     
-    KEYWORD_OPERATORS = {
-        'if', 'else', 'while', 'for', 'do', 'switch', 'case', 'catch', 'try', 'finally',
-        'return', 'break', 'continue', 'throw', 'new', 'instanceof', 'assert',
-        'synchronized', 'yield', 'default'
-    }
-    SEPARATOR_OPERATORS = {';', '{', '}', '(', ')', '[', ']', ',', '.', ':'}
-    OPERATOR_TOKENS = {
-        '+', '-', '*', '/', '%', '=', '==', '!=', '<', '>', '<=', '>=',
-        '&&', '||', '!', '&', '|', '^', '~', '<<', '>>', '>>>',
-        '+=', '-=', '*=', '/=', '%=', '&=', '|=', '^=', '<<=', '>>=', '>>>=',
-        '++', '--', '?', '::'
-    }
+    KEYWORD_OPERATORS = tokens.KEYWORD_OPERATORS
+    SEPARATOR_OPERATORS = tokens.SEPARATOR_OPERATORS
+    OPERATOR_TOKENS = tokens.OPERATOR_TOKENS
+
+    # Hook aggiuntivi per regola: rule_index -> [hook(visitor, ctx)], vedi register_rule_hook
+    RULE_HOOKS: Dict[int, List[Callable]] = {}
     
     def __init__(self, inheritance_graph: Dict[str, Optional[str]], class_files: Dict[str, str]):
         super().__init__()
@@ -121,129 +59,175 @@ class MetricsVisitor(Java20ParserVisitor):
         self.current_class: Optional[ClassMetrics] = None
         self.current_method: Optional[MethodMetrics] = None
         self.current_file_path = ""
-    
-    # --- VISITA ---
+        # Classi dichiarate nel file corrente: la finalizzazione tocca solo queste
+        self.current_file_classes: List[ClassMetrics] = []
+        self._dispatch = self._build_dispatch()
 
-    def visitCompilationUnit(self, ctx):
-        return self.visitChildren(ctx)
-    
-    def visitNormalClassDeclaration(self, ctx):
-        if hasattr(ctx, 'typeIdentifier'):
-            tid = ctx.typeIdentifier()
-            if tid:
-                class_name = tid.getText()
-                self.current_class = ClassMetrics(class_name, self.current_file_path)
-                
-                # CATTURA LINEE CLASSE
-                self.current_class.start_line = ctx.start.line
-                self.current_class.end_line = ctx.stop.line
-                
-                self.classes[class_name] = self.current_class
-                self.visitChildren(ctx)
-                self.current_class = None
+    # --- DISPATCH PER INDICE DI REGOLA ---
+
+    @classmethod
+    def register_rule_hook(cls, rule_index: int, hook: Callable):
+        """
+        Register hook(visitor, ctx) to run whenever a node of the given rule is reached,
+        before the node's own handling. Lets new metrics plug in without overriding visit methods.
+        """
+        cls.RULE_HOOKS.setdefault(rule_index, []).append(hook)
+
+    def _build_dispatch(self) -> List[Optional[Callable]]:
+        """Enter action per rule index (None = just walk the children)"""
+        handlers = {
+            Java20Parser.RULE_normalClassDeclaration: self._enter_class,
+            Java20Parser.RULE_methodDeclaration: self._enter_method,
+            Java20Parser.RULE_constructorDeclaration: self._enter_constructor,
+            Java20Parser.RULE_fieldDeclaration: self._enter_field,
+            Java20Parser.RULE_localVariableDeclaration: self._enter_local_variable,
+            Java20Parser.RULE_statement: self._enter_statement,
+            Java20Parser.RULE_switchLabel: self._enter_switch_label,
+        }
+        table: List[Optional[Callable]] = [None] * len(Java20Parser.ruleNames)
+        for rule_index, handler in handlers.items():
+            table[rule_index] = handler
+        for rule_index, hooks in self.RULE_HOOKS.items():
+            table[rule_index] = self._with_hooks(hooks, table[rule_index])
+        return table
+
+    def _with_hooks(self, hooks: List[Callable], handler: Optional[Callable]) -> Callable:
+        def dispatch(ctx):
+            for hook in hooks:
+                hook(self, ctx)
+            return handler(ctx) if handler else None
+        return dispatch
+
+    # --- VISITA (stack esplicito) ---
+
+    def visit(self, tree):
+        self._walk([tree])
         return None
-    
-    def visitMethodDeclaration(self, ctx):
-        if not self.current_class: return None
-        
+
+    def visitChildren(self, node):
+        if node.children:
+            self._walk(list(reversed(node.children)))
+        return None
+
+    def _walk(self, stack: list):
+        """
+        Depth-first walk with an explicit stack instead of recursion: deeply nested
+        trees (long string concatenations, builder chains) never reach the interpreter
+        recursion limit. The stack holds the nodes still to visit and the exit actions
+        of the rules being visited, so state changes happen in the same order as in a
+        recursive visit. An enter action returns an exit action to run after its
+        subtree, None, or _SKIP_SUBTREE to leave the subtree unvisited.
+        """
+        dispatch = self._dispatch
+        visit_terminal = self.visitTerminal
+        pop, push, extend = stack.pop, stack.append, stack.extend
+        while stack:
+            item = pop()
+            if isinstance(item, ParserRuleContext):
+                enter = dispatch[item.getRuleIndex()]
+                if enter:
+                    exit_action = enter(item)
+                    if exit_action is _SKIP_SUBTREE: continue
+                    if exit_action: push(exit_action)
+                children = item.children
+                if children: extend(reversed(children))
+            elif type(item) is TerminalNodeImpl:
+                visit_terminal(item)
+            elif callable(item):
+                item()  # exit action (i nodi di errore non sono callable e vengono saltati)
+
+    def _enter_class(self, ctx):
+        tid = ctx.typeIdentifier()
+        if not tid: return _SKIP_SUBTREE
+        class_name = tid.getText()
+        self.current_class = ClassMetrics(class_name, self.current_file_path)
+
+        # CATTURA LINEE CLASSE
+        self.current_class.start_line = ctx.start.line
+        self.current_class.end_line = ctx.stop.line
+
+        self.classes[class_name] = self.current_class
+        self.current_file_classes.append(self.current_class)
+        return self._exit_class
+
+    def _exit_class(self):
+        self.current_class = None
+
+    def _enter_method(self, ctx):
+        if not self.current_class: return _SKIP_SUBTREE
+
         method_name = "unknown"
-        if hasattr(ctx, 'methodHeader'):
-            header = ctx.methodHeader()
-            if header and hasattr(header, 'methodDeclarator'):
-                declarator = header.methodDeclarator()
-                if declarator and hasattr(declarator, 'identifier'):
-                    method_name = declarator.identifier().getText()
-        
+        header = ctx.methodHeader()
+        if header:
+            declarator = header.methodDeclarator()
+            if declarator:
+                method_name = declarator.identifier().getText()
+
         self.current_method = MethodMetrics(method_name, self.current_class.class_name)
         self.current_method.start_line = ctx.start.line
         self.current_method.end_line = ctx.stop.line
-        
-        self.visitChildren(ctx)
-        
-        self.current_method.calculate_halstead()
-        self.current_class.add_method(self.current_method)
-        self.current_method = None
-        return None
-    
-    def visitConstructorDeclaration(self, ctx):
-        if not self.current_class: return None
+        return self._exit_method
+
+    def _enter_constructor(self, ctx):
+        if not self.current_class: return _SKIP_SUBTREE
         method_name = "<init>"
-        if hasattr(ctx, 'constructorDeclarator'):
-            stn = ctx.constructorDeclarator().simpleTypeName()
-            if stn: method_name = stn.getText()
-            
+        stn = ctx.constructorDeclarator().simpleTypeName()
+        if stn: method_name = stn.getText()
+
         self.current_method = MethodMetrics(method_name, self.current_class.class_name)
         self.current_method.start_line = ctx.start.line
         self.current_method.end_line = ctx.stop.line
-        
-        self.visitChildren(ctx)
-        
-        self.current_method.calculate_halstead()
+        return self._exit_method
+
+    def _exit_method(self):
+        # Halstead si calcola in blocco per tutto il file in finalize_file
         self.current_class.add_method(self.current_method)
         self.current_method = None
-        return None
 
     # --- CBO ---
-    def visitFieldDeclaration(self, ctx):
-        if self.current_class and hasattr(ctx, 'unannType'):
+    def _enter_field(self, ctx):
+        if self.current_class:
             self._check_type(ctx.unannType())
-        return self.visitChildren(ctx)
-    
-    def visitLocalVariableDeclaration(self, ctx):
-        if self.current_class and hasattr(ctx, 'localVariableType'):
+
+    def _enter_local_variable(self, ctx):
+        if self.current_class:
             lvt = ctx.localVariableType()
-            if hasattr(lvt, 'unannType'):
+            if lvt:
                 self._check_type(lvt.unannType())
-        return self.visitChildren(ctx)
 
     def _check_type(self, type_ctx):
-        type_name = self._extract_type_name(type_ctx)
+        self._check_type_name(self._extract_type_name(type_ctx))
+
+    def _check_type_name(self, type_name):
         if type_name and not self._is_primitive_or_builtin(type_name):
             if self.current_class:
                 self.current_class.external_types.add(type_name)
 
     # --- COMPLEXITY ---
-    def visitStatement(self, ctx):
-        # Incrementa se è un nodo di controllo
-        if hasattr(ctx, 'ifThenStatement') and ctx.ifThenStatement(): self._increment_complexity()
-        elif hasattr(ctx, 'ifThenElseStatement') and ctx.ifThenElseStatement(): self._increment_complexity()
-        elif hasattr(ctx, 'whileStatement') and ctx.whileStatement(): self._increment_complexity()
-        elif hasattr(ctx, 'forStatement') and ctx.forStatement(): self._increment_complexity()
-        elif hasattr(ctx, 'doStatement') and ctx.doStatement(): self._increment_complexity()
-        elif hasattr(ctx, 'switchStatement') and ctx.switchStatement(): self._increment_complexity()
-        elif hasattr(ctx, 'tryStatement') and ctx.tryStatement():
-             try_stmt = ctx.tryStatement()
-             if hasattr(try_stmt, 'catches') and try_stmt.catches():
-                 for _ in try_stmt.catches().catchClause(): self._increment_complexity()
-        
-        return self.visitChildren(ctx)
+    def _enter_statement(self, ctx):
+        # Incrementa se è un nodo di controllo: un solo lookup sull'indice di regola del figlio
+        kind = ctx.children[0] if ctx.children else None
+        if isinstance(kind, ParserRuleContext) and kind.getRuleIndex() in CONTROL_STATEMENT_RULES:
+            self._increment_complexity()
 
-    def visitSwitchLabel(self, ctx):
-        if hasattr(ctx, 'CASE') and ctx.CASE(): self._increment_complexity()
-        return self.visitChildren(ctx)
+    def _enter_switch_label(self, ctx):
+        if ctx.CASE(): self._increment_complexity()
 
     # --- HALSTEAD ---
     def visitTerminal(self, node):
-        if not self.current_method: return None
-        try:
-            token = node.getSymbol()
-            if token.type == -1: return None # EOF
-            
-            # Skip hidden
-            if hasattr(Java20Lexer, 'WS') and token.type == Java20Lexer.WS: return None
-            if hasattr(Java20Lexer, 'COMMENT') and token.type == Java20Lexer.COMMENT: return None
-            if hasattr(Java20Lexer, 'LINE_COMMENT') and token.type == Java20Lexer.LINE_COMMENT: return None
-
-            token_text = node.getText()
-            token_name = Java20Lexer.symbolicNames[token.type]
-            
-            if token_text in ['&&', '||', '?']: self._increment_complexity()
+        method = self.current_method
+        if not method: return None
+        token = node.symbol
+        # Un solo lookup per tipo di token (EOF = -1 cade sullo slot finale IGNORE)
+        flags = TOKEN_CLASSES[token.type] if token.type < len(TOKEN_CLASSES) else 0
+        if not flags: return None
+        
+        if flags & CC_INCREMENT: method.cyclomatic_complexity += 1
 
-            if self._is_operator(token_name, token_text):
-                self.current_method.operators.append(token_text)
-            elif self._is_operand(token_name, token_text):
-                self.current_method.operands.append(token_text)
-        except: pass
+        if flags & OPERATOR:
+            method.operators[sys.intern(token.text)] += 1
+        else:
+            method.operands[sys.intern(token.text)] += 1
         return None
 
     # --- HELPERS ---
@@ -269,8 +253,13 @@ class MetricsVisitor(Java20ParserVisitor):
             
         try:
             # Approccio testuale diretto: prendiamo tutto il testo del tipo
-            full_text = ctx.getText()
-            
+            return self._type_name_from_text(ctx.getText())
+        except Exception:
+            return None
+
+    def _type_name_from_text(self, full_text: str):
+        """Type name from the source text of a type (shared with the parse-listener engine)"""
+        try:
             # 1. Rimuoviamo array brackets []
             clean_text = full_text.replace('[', '').replace(']', '')
             
@@ -287,13 +276,6 @@ class MetricsVisitor(Java20ParserVisitor):
         except Exception:
             return None
 
-    def _is_operator(self, token_name, text):
-        return (text in self.OPERATOR_TOKENS or text in self.SEPARATOR_OPERATORS or text in self.KEYWORD_OPERATORS)
-
-    def _is_operand(self, token_name, text):
-        if token_name == 'Identifier': return text not in self.KEYWORD_OPERATORS
-        return token_name in ['IntegerLiteral', 'FloatingPointLiteral', 'BooleanLiteral', 'CharacterLiteral', 'StringLiteral', 'NullLiteral']
-
     def _is_primitive_or_builtin(self, type_name):
         return type_name in {'int','long','short','byte','char','float','double','boolean','void','String','Object','List','ArrayList','Map','HashMap','Set','HashSet','Date','File','Scanner','System','Math'}
 
@@ -303,46 +285,58 @@ class MetricsVisitor(Java20ParserVisitor):
         Does NOT perform parsing.
         """
         self.current_file_path = file_path
+        self.current_file_classes = []
         try:
             if tree is None:
                 print(f"Warning: Cannot analyze {file_path} - tree is None")
                 return
             
-            self.visit(tree)
-            self._calculate_loc(file_path)
-            
-            # Finalizza le metriche solo per le classi trovate in questo albero
-            for class_metrics in self.classes.values():
-                if class_metrics.file_path == file_path:
-                    class_metrics.calculate_class_metrics(self.inheritance_graph)
+            with profiling.step('visit'):
+                self.visit(tree)
+            self.finalize_file(file_path)
         except Exception as e:
             import traceback
             print(f"Error analyzing tree for {file_path}: {e}")
             traceback.print_exc()
+            self.complete_methods()
 
-    def analyze_file(self, file_path: str):
+    def analyze_file(self, file_path: str, two_stage: bool = False):
         self.current_file_path = file_path
+        self.current_file_classes = []
         try:
-            input_stream = FileStream(file_path, encoding='utf-8')
-            lexer = Java20Lexer(input_stream)
-            lexer.removeErrorListeners()
-            lexer.addErrorListener(SyntaxErrorListener())
-            stream = CommonTokenStream(lexer)
-            parser = Java20Parser(stream)
-            parser.removeErrorListeners()
-            parser.addErrorListener(SyntaxErrorListener())
-            tree = parser.compilationUnit()
+            tree, _ = parse_compilation_unit(file_path, two_stage)
             
             self.visit(tree)
-            self._calculate_loc(file_path) # Calcola LOC reali
-            
-            for class_metrics in self.classes.values():
-                # Ricalcola metriche classe solo per le classi di QUESTO file
-                if class_metrics.file_path == file_path:
-                    class_metrics.calculate_class_metrics(self.inheritance_graph)
+            self.finalize_file(file_path)
 
         except Exception as e:
             print(f"Error processing {file_path}: {e}")
+            self.complete_methods()
+
+    def finalize_file(self, file_path: str):
+        """LOC and class-level metrics for the classes declared in the file just visited"""
+        with profiling.step('loc'):
+            self._calculate_loc(file_path) # Calcola LOC reali
+        
+        # Ricalcola metriche classe solo per le classi di QUESTO file, in blocco
+        with profiling.step('finalize'):
+            file_classes = self._file_classes()
+            calculate_methods_halstead([m for cm in file_classes for m in cm.methods.values()])
+            calculate_classes_metrics(file_classes)
+
+    def complete_methods(self):
+        """
+        Halstead metrics of the methods collected before a visit was aborted:
+        finalize_file is not reached, but completed methods keep their metrics.
+        """
+        calculate_methods_halstead([m for cm in self.current_file_classes for m in cm.methods.values()])
+
+    def _file_classes(self) -> List[ClassMetrics]:
+        """
+        Classes declared in the file being analyzed that are still part of the results
+        (a later declaration with the same name replaces the earlier one).
+        """
+        return [cm for cm in self.current_file_classes if self.classes.get(cm.class_name) is cm]
 
     def _calculate_loc(self, file_path: str):
         """Calcolo LOC Reali basato sui limiti della CLASSE, non sui metodi."""
@@ -350,8 +344,8 @@ class MetricsVisitor(Java20ParserVisitor):
             with open(file_path, 'r', encoding='utf-8') as f:
                 all_lines = f.readlines()
             
-            for cm in self.classes.values():
-                if cm.file_path == file_path and cm.start_line > 0 and cm.end_line > 0:
+            for cm in self._file_classes():
+                if cm.start_line > 0 and cm.end_line > 0:
                     # Estrai le righe della CLASSE intera
                     class_lines = all_lines[cm.start_line-1 : cm.end_line]
                     # Conta righe non vuote e non commenti
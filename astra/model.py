@@ -0,0 +1,113 @@
+"""
+Metrics Model Module
+Per-class and per-method metric records and their batch finalization.
+
+Kept apart from the visitor so that the code reading results (cache, report,
+charts, incremental state) does not import the generated ANTLR parser.
+"""
+
+from typing import Dict, List, Set, Optional
+from collections import Counter
+
+from astra.calculator import HalsteadCalculator, MaintainabilityCalculator, CKCalculator
+
+
+class MethodMetrics:
+    def __init__(self, method_name: str, class_name: str):
+        self.method_name = method_name
+        self.class_name = class_name
+        # Occorrenze per token (testo internato): niente liste che crescono con il metodo
+        self.operators: Counter = Counter()
+        self.operands: Counter = Counter()
+        self.cyclomatic_complexity = 1
+        self.loc = 0
+        self.start_line = 0
+        self.end_line = 0
+        self.halstead: Optional[Dict] = None
+    
+    def calculate_halstead(self):
+        n1 = len(self.operators)
+        n2 = len(self.operands)
+        N1 = sum(self.operators.values())
+        N2 = sum(self.operands.values())
+        self.halstead = HalsteadCalculator.calculate(n1, n2, N1, N2)
+
+
+class ClassMetrics:
+    def __init__(self, class_name: str, file_path: str):
+        self.class_name = class_name
+        self.file_path = file_path
+        self.methods: Dict[str, MethodMetrics] = {}
+        self.loc = 0
+        # Nuovi campi per LOC precisa di classe
+        self.start_line = 0
+        self.end_line = 0
+        
+        self.external_types: Set[str] = set()
+        self.wmc = 0
+        self.dit = 0
+        self.noc = 0
+        self.cbo = 0
+        self.maintainability_index = 0.0
+        self.aggregated_halstead: Optional[Dict] = None
+    
+    def add_method(self, method: MethodMetrics):
+        self.methods[method.method_name] = method
+    
+    def calculate_class_metrics(self, inheritance_graph):
+        calculate_classes_metrics([self])
+    
+    def release_tokens(self):
+        """Drop the per-token counters once the Halstead metrics are computed"""
+        for method in self.methods.values():
+            method.operators = Counter()
+            method.operands = Counter()
+
+
+def calculate_methods_halstead(methods: List[MethodMetrics]):
+    """Halstead metrics of the methods that do not have them yet, in one batch"""
+    pending = [m for m in methods if m.halstead is None]
+    if not pending: return
+    batch = HalsteadCalculator.calculate_batch(
+        [len(m.operators) for m in pending], [len(m.operands) for m in pending],
+        [sum(m.operators.values()) for m in pending], [sum(m.operands.values()) for m in pending])
+    for method, halstead in zip(pending, HalsteadCalculator.batch_to_dicts(batch)):
+        method.halstead = halstead
+
+
+def calculate_classes_metrics(classes: List[ClassMetrics]):
+    """Class-level metrics of many classes: Halstead and MI computed in one batch each"""
+    with_tokens = []
+    counts = []   # (n1, n2, N1, N2) delle classi con almeno un token
+    avg_complexities = []
+    for class_metrics in classes:
+        all_operators = Counter()
+        all_operands = Counter()
+        method_complexities = []
+        
+        for method in class_metrics.methods.values():
+            all_operators.update(method.operators)
+            all_operands.update(method.operands)
+            method_complexities.append(method.cyclomatic_complexity)
+            # Nota: La LOC di classe ora viene calcolata separatamente
+        
+        if all_operators or all_operands:
+            with_tokens.append(class_metrics)
+            counts.append((len(all_operators), len(all_operands),
+                           sum(all_operators.values()), sum(all_operands.values())))
+        
+        class_metrics.wmc = CKCalculator.calculate_wmc(method_complexities)
+        class_metrics.cbo = CKCalculator.calculate_cbo(class_metrics.external_types)
+        avg_cc = sum(method_complexities) / len(method_complexities) if method_complexities else 1
+        avg_complexities.append(int(avg_cc))
+    
+    if with_tokens:
+        batch = HalsteadCalculator.calculate_batch(*zip(*counts))
+        for class_metrics, halstead in zip(with_tokens, HalsteadCalculator.batch_to_dicts(batch)):
+            class_metrics.aggregated_halstead = halstead
+    
+    # Usa la LOC di classe calcolata (non la somma dei metodi)
+    volumes = [cm.aggregated_halstead.get('V', 0.0) if cm.aggregated_halstead else 0.0 for cm in classes]
+    mi_values = MaintainabilityCalculator.calculate_batch(volumes, avg_complexities, [cm.loc for cm in classes])
+    for class_metrics, mi in zip(classes, mi_values.tolist()):
+        class_metrics.maintainability_index = mi
@@ -0,0 +1,221 @@
+"""
+Paged Report Layout
+Multi-page report for code bases too large for a single HTML file.
+
+The report path becomes an index page with the dashboard, the Hall of Shame and
+a table of shards, one per source directory (i.e. per package). The accordion
+of each shard goes to its own page in <report name>_pages/, and the shard
+pages are rendered on a process pool.
+
+Each shard is hashed from its class records, salted with the ASTra version and
+the page templates. The hashes of the last run are kept in shards.json next to
+the pages, so a re-run rewrites only the shards whose content changed and
+removes the pages of shards that no longer exist.
+"""
+
+import hashlib
+import html
+import json
+import os
+import re
+from concurrent.futures import ProcessPoolExecutor
+from pathlib import Path
+from typing import Dict, Iterable, List, Tuple
+
+from astra import __version__
+from astra.report_generator import HtmlStreamWriter, ReportGenerator
+
+# Incrementare quando cambia il formato delle pagine o del manifest
+PAGE_FORMAT_VERSION = 1
+MANIFEST_NAME = 'shards.json'
+ROOT_SHARD = '(root)'
+# I template delle pagine: una loro modifica invalida tutti gli shard
+TEMPLATE_FILES = (Path(__file__).resolve().parent / 'report_generator.py', Path(__file__).resolve())
+
+
+class Shard:
+    """The classes of one source directory and the numbers shown in the index"""
+
+    def __init__(self, key: str):
+        self.key = key
+        self.file_name = shard_file_name(key)
+        self.records: List[Dict] = []
+        self.num_methods = 0
+        self.mi_sum = 0.0
+        self.red = 0
+        self.max_wmc = 0
+
+    def add(self, record: Dict):
+        self.records.append(record)
+        self.num_methods += len(record['methods'])
+        self.mi_sum += record['mi']
+        self.red += record['mi'] < 65
+        self.max_wmc = max(self.max_wmc, record['wmc'])
+
+    @property
+    def avg_mi(self) -> float:
+        return self.mi_sum / len(self.records) if self.records else 0.0
+
+
+def shard_key(file_path: str, root: str) -> str:
+    """Directory of the file relative to the project root, '/'-separated"""
+    directory = os.path.relpath(os.path.dirname(os.path.abspath(file_path)), root)
+    return ROOT_SHARD if directory == '.' else Path(directory).as_posix()
+
+
+def shard_file_name(key: str) -> str:
+    # Il suffisso distingue chiavi che diventano uguali dopo la sostituzione dei caratteri
+    slug = re.sub(r'[^A-Za-z0-9_-]+', '.', key).strip('.') or 'root'
+    return f"{slug[:80]}-{hashlib.sha1(key.encode('utf-8')).hexdigest()[:8]}.html"
+
+
+def compute_page_salt() -> bytes:
+    digest = hashlib.sha256()
+    digest.update(f"astra={__version__};pages={PAGE_FORMAT_VERSION};".encode('utf-8'))
+    for template_file in TEMPLATE_FILES:
+        digest.update(template_file.read_bytes())
+    return digest.digest()
+
+
+def _shard_digest(salt: bytes, project_name: str, shard: Shard) -> str:
+    digest = hashlib.sha256(salt)
+    digest.update(json.dumps([project_name, shard.key, shard.records], sort_keys=True).encode('utf-8'))
+    return digest.hexdigest()
+
+
+def _render_shard(task: Tuple[str, str, str, str, List[Dict]]) -> str:
+    """Write one shard page (runs in a worker process); the page is replaced atomically"""
+    page_path, project_name, key, index_name, records = task
+    temp_path = f"{page_path}.tmp"
+    with open(temp_path, 'w', encoding='utf-8') as f:
+        writer = HtmlStreamWriter(f)
+        ReportGenerator.write_document_head(writer, f"{project_name} / {html.escape(key)}")
+        writer.write(f"""<p style="margin-bottom: 20px;"><a href="../{html.escape(index_name)}">&larr; Back to the dashboard</a></p>
+            """)
+        ReportGenerator._write_accordion(writer, records)
+        ReportGenerator.write_document_tail(writer)
+        writer.flush()
+    os.replace(temp_path, page_path)
+    return page_path
+
+
+def _load_manifest(pages_dir: Path) -> Dict[str, str]:
+    try:
+        with open(pages_dir / MANIFEST_NAME, 'r', encoding='utf-8') as f:
+            manifest = json.load(f)
+        return manifest['shards'] if manifest.get('format') == PAGE_FORMAT_VERSION else {}
+    except (OSError, ValueError, KeyError, AttributeError):
+        return {}
+
+
+def _save_manifest(pages_dir: Path, hashes: Dict[str, str]):
+    temp_path = pages_dir / f"{MANIFEST_NAME}.tmp"
+    with open(temp_path, 'w', encoding='utf-8') as f:
+        json.dump({'format': PAGE_FORMAT_VERSION, 'shards': hashes}, f, indent=1, sort_keys=True)
+    os.replace(temp_path, pages_dir / MANIFEST_NAME)
+
+
+def group_shards(records: Iterable[Dict]) -> List[Shard]:
+    """Shards sorted by key; records keep their order (by class name) inside each shard"""
+    records = list(records)
+    directories = {os.path.dirname(os.path.abspath(record['file'])) for record in records}
+    root = os.path.commonpath(directories) if directories else ''
+    shards: Dict[str, Shard] = {}
+    for record in records:
+        key = shard_key(record['file'], root)
+        if key not in shards:
+            shards[key] = Shard(key)
+        shards[key].add(record)
+    return [shards[key] for key in sorted(shards)]
+
+
+def write_paged_report(records: Iterable[Dict], data: Dict, output_path: str, jobs: int = 1) -> Tuple[int, int]:
+    """
+    Write the index page at output_path and the shard pages next to it.
+    records must be sorted by class name; data carries project_name, summary,
+    charts and critical_classes as for ReportGenerator.write_report.
+    Returns (pages written, pages skipped because unchanged).
+    """
+    project_name = data.get('project_name', 'Java Project')
+    output = Path(output_path)
+    pages_dir = output.with_name(f"{output.stem}_pages")
+    pages_dir.mkdir(parents=True, exist_ok=True)
+
+    shards = group_shards(records)
+    salt = compute_page_salt()
+    previous = _load_manifest(pages_dir)
+    hashes = {}
+    tasks = []
+    for shard in shards:
+        digest = _shard_digest(salt, project_name, shard)
+        hashes[shard.file_name] = digest
+        page_path = pages_dir / shard.file_name
+        if previous.get(shard.file_name) != digest or not page_path.exists():
+            tasks.append((str(page_path), project_name, shard.key, output.name, shard.records))
+
+    if jobs <= 1 or len(tasks) <= 1:
+        for task in tasks:
+            _render_shard(task)
+    else:
+        with ProcessPoolExecutor(max_workers=min(jobs, len(tasks))) as executor:
+            list(executor.map(_render_shard, tasks))
+
+    # Pagine di shard scomparsi (directory eliminate o rinominate)
+    for file_name in set(previous) - set(hashes):
+        try:
+            (pages_dir / file_name).unlink()
+        except OSError:
+            pass
+    _save_manifest(pages_dir, hashes)
+
+    with open(output, 'w', encoding='utf-8') as f:
+        writer = HtmlStreamWriter(f)
+        ReportGenerator.write_document_head(writer, project_name)
+        writer.write(f"""{ReportGenerator._generate_dashboard(data.get('summary', {}), data.get('charts', {}))}
+
+            {ReportGenerator._generate_hall_of_shame(data.get('critical_classes', []))}
+
+            """)
+        _write_shard_index(writer, shards, pages_dir.name)
+        ReportGenerator.write_document_tail(writer)
+        writer.flush()
+    return len(tasks), len(shards) - len(tasks)
+
+
+def _write_shard_index(writer: HtmlStreamWriter, shards: List[Shard], pages_dir_name: str):
+    """Section C of the index: one row per shard, linking to its page"""
+    writer.write(f"""
+            <div class="section">
+                <h2>📦 Packages ({len(shards)})</h2>
+                <p style="margin-bottom: 20px; color: #666;">
+                    Class details are split into one page per source directory. Click a package to open its classes.
+                </p>
+                <table class="methods-table">
+                    <thead>
+                        <tr>
+                            <th>Package</th>
+                            <th>Classes</th>
+                            <th>Methods</th>
+                            <th>Avg MI</th>
+                            <th>Red Classes</th>
+                            <th>Max WMC</th>
+                        </tr>
+                    </thead>
+                    <tbody>
+                    """)
+    for shard in shards:
+        writer.write(f"""
+                        <tr>
+                            <td><a href="{html.escape(pages_dir_name)}/{shard.file_name}"><strong>{html.escape(shard.key)}</strong></a></td>
+                            <td class="metric-value">{len(shard.records)}</td>
+                            <td class="metric-value">{shard.num_methods}</td>
+                            <td class="metric-value">{ReportGenerator._get_mi_badge(shard.avg_mi)}</td>
+                            <td class="metric-value">{shard.red}</td>
+                            <td class="metric-value">{shard.max_wmc}</td>
+                        </tr>
+                        """)
+    writer.write("""
+                    </tbody>
+                </table>
+            </div>
+        """)
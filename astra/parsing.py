@@ -0,0 +1,166 @@
+"""
+Parsing Module
+Central place where Java files are turned into ANTLR parse trees.
+
+Supports an opt-in two-stage strategy: the file is first parsed with the
+cheaper SLL prediction mode and a BailErrorStrategy; only when that fails
+(real syntax error or an SLL-ambiguous construct) the token stream is rewound
+and parsed again with full LL prediction. Both stages produce the same tree
+for valid input, so the results of the analysis are unchanged.
+
+A parse listener can be attached instead of building a tree: with
+buildParseTrees = False the parser only reports enter/exit/terminal events,
+and rule contexts become garbage as soon as their rule returns.
+
+The generated lexer and parser are imported on first use: importing
+Java20Parser deserializes its ATN, which dominates the start-up of short runs
+(and is not needed at all when every file is served from the cache). One
+lexer/parser pair is then kept per process and pointed at each new file, so
+later files pay neither the import nor the recognizer construction; the
+prediction DFA cache is shared at class level by ANTLR anyway.
+"""
+
+from typing import List, Optional, Tuple
+from antlr4 import FileStream, CommonTokenStream, Token
+from antlr4.atn.PredictionMode import PredictionMode
+from antlr4.error.ErrorListener import ErrorListener
+from antlr4.error.ErrorStrategy import BailErrorStrategy, DefaultErrorStrategy
+from antlr4.error.Errors import ParseCancellationException
+
+from astra import profiling
+
+class SyntaxErrorListener(ErrorListener):
+    """Silently ignores syntax errors: malformed files are analyzed as far as possible"""
+    def syntaxError(self, recognizer, offendingSymbol, line, column, msg, e):
+        pass
+
+
+class ParseStats:
+    """Process-wide counters for the parse strategy"""
+    files = 0
+    ll_fallbacks = 0
+
+    @staticmethod
+    def reset():
+        ParseStats.files = 0
+        ParseStats.ll_fallbacks = 0
+
+
+_grammar: Optional[tuple] = None       # (Java20Lexer, Java20Parser), importati al primo uso
+_recognizers: Optional[tuple] = None   # (lexer, parser) riusati da un file all'altro
+
+
+def load_grammar() -> tuple:
+    """The generated (Java20Lexer, Java20Parser) classes; the first call pays the ATN deserialization"""
+    global _grammar
+    if _grammar is None:
+        try:
+            from grammar.Java20Lexer import Java20Lexer
+            from grammar.Java20Parser import Java20Parser
+        except ImportError:
+            import sys
+            sys.path.append('grammar')
+            from Java20Lexer import Java20Lexer  # pyright: ignore[reportMissingImports]
+            from Java20Parser import Java20Parser  # pyright: ignore[reportMissingImports]
+        _grammar = (Java20Lexer, Java20Parser)
+    return _grammar
+
+
+def _reusable_recognizers() -> tuple:
+    """The lexer and parser of this process, created once (not reentrant: one file at a time)"""
+    global _recognizers
+    if _recognizers is None:
+        Java20Lexer, Java20Parser = load_grammar()
+        lexer = Java20Lexer(None)
+        lexer.removeErrorListeners()
+        lexer.addErrorListener(SyntaxErrorListener())
+        _recognizers = (lexer, Java20Parser(None))
+    return _recognizers
+
+
+def _lexer_for(file_path: str):
+    lexer, _ = _reusable_recognizers()
+    # Il setter azzera modo, riga e colonna; i token già emessi restano legati al loro FileStream
+    lexer.inputStream = FileStream(file_path, encoding='utf-8')
+    return lexer
+
+
+def lex_file(file_path: str) -> List[Token]:
+    """Run only the lexer and return the default-channel tokens (no comments, no EOF)"""
+    lexer = _lexer_for(file_path)
+    with profiling.step('lex'):
+        all_tokens = lexer.getAllTokens()
+    file_profile = profiling.current_file()
+    if file_profile is not None:
+        file_profile.tokens = len(all_tokens)
+    return [t for t in all_tokens if t.channel == Token.DEFAULT_CHANNEL]
+
+
+def parse_compilation_unit(file_path: str, two_stage: bool = False, listener=None) -> Tuple[object, bool]:
+    """
+    Parse a Java file and return (tree, used_ll_fallback).
+
+    Args:
+        file_path: Path of the .java file
+        two_stage: Try SLL prediction first and fall back to full LL on failure
+        listener: Parse listener fed during parsing; when given, no parse tree is built
+                  and the returned tree is an empty root context. It must provide reset(),
+                  called before an LL re-parse to discard the events of the failed SLL stage.
+    """
+    stream = CommonTokenStream(_lexer_for(file_path))
+    _, parser = _reusable_recognizers()
+    # Riporta il parser allo stato di uno appena creato: contesto, error handler e simulatore
+    # vengono azzerati da setTokenStream, listener e strategia li reimpostiamo qui.
+    # I parse listener vanno tolti prima: reset() -> setTrace(False) chiama
+    # removeParseListener(None), che solleva ValueError se è rimasto un listener attaccato
+    parser.removeParseListeners()
+    parser.setTokenStream(stream)
+    parser.removeErrorListeners()
+    parser._errHandler = DefaultErrorStrategy()
+    parser._interp.predictionMode = PredictionMode.LL
+    parser.buildParseTrees = listener is None
+    if listener is not None:
+        parser.addParseListener(listener)
+    ParseStats.files += 1
+
+    file_profile = profiling.current_file()
+    if file_profile is not None:
+        # Solo sotto --profile: tutti i token subito, per separare il lexing dal parsing
+        # (normalmente il parser li chiede al lexer mentre procede; l'albero non cambia)
+        with profiling.step('lex'):
+            stream.fill()
+        file_profile.tokens = len(stream.tokens)
+    with profiling.step('parse'):
+        try:
+            return _run_parser(parser, stream, two_stage, listener)
+        finally:
+            # Il parser sopravvive al file: non deve trattenere (né notificare) il listener
+            parser.removeParseListeners()
+
+
+def _run_parser(parser, stream: CommonTokenStream, two_stage: bool, listener) -> Tuple[object, bool]:
+    if not two_stage:
+        parser.addErrorListener(SyntaxErrorListener())
+        return parser.compilationUnit(), False
+
+    # Stage 1: SLL + bail al primo errore (nessun recovery, nessun report)
+    parser._interp.predictionMode = PredictionMode.SLL
+    parser._errHandler = BailErrorStrategy()
+    try:
+        return parser.compilationUnit(), False
+    except ParseCancellationException:
+        pass
+
+    # Stage 2: riavvolgi i token (il lexing non viene ripetuto) e riparsa in LL completo
+    ParseStats.ll_fallbacks += 1
+    stream.seek(0)
+    # Come in parse_compilation_unit: reset() solleva ValueError con un listener attaccato
+    parser.removeParseListeners()
+    parser.reset()
+    if listener is not None:
+        listener.reset()
+        parser.addParseListener(listener)
+    parser.addErrorListener(SyntaxErrorListener())
+    parser._errHandler = DefaultErrorStrategy()
+    parser._interp.predictionMode = PredictionMode.LL
+    return parser.compilationUnit(), True
@@ -0,0 +1,169 @@
+"""
+Pipeline Module
+Single-parse analysis of individual Java files, shared by the entry points.
+Each file is parsed exactly once; the tree is handed to both the inheritance
+graph builder and the metrics visitor, and only a compact per-file result
+(class records, methods, extends edges) leaves the function. This makes the
+work safe to fan out to a process pool.
+
+Two engines produce the same results: 'visitor' builds the parse tree and
+walks it, 'listener' collects everything from parser events without ever
+building a tree (see metrics_listener). A third one, 'lexer', skips parsing
+altogether and gives approximate numbers (see lexer_engine).
+
+The engine modules import the generated grammar, so they are loaded only when
+a file actually has to be analyzed: a run served entirely from the cache never
+pays for them (nor for numpy, used by the batch finalization). Before a process
+pool is started they are loaded once in the parent, and the forked workers
+inherit the already deserialized ATN.
+"""
+
+import os
+from concurrent.futures import ProcessPoolExecutor
+from functools import partial
+from typing import Dict, Iterator, List, Optional
+
+from astra import profiling
+from astra.cache import ResultCache
+from astra.graph_builder import InheritanceGraphBuilder
+from astra.model import ClassMetrics
+from astra.parsing import parse_compilation_unit
+
+ENGINES = ('visitor', 'listener', 'lexer')
+DEFAULT_ENGINE = 'visitor'
+# Engines whose results differ from the full parse: cached separately
+APPROXIMATE_ENGINES = {'lexer'}
+
+
+class FileResult:
+    """Compact, picklable outcome of analyzing a single Java file"""
+
+    def __init__(self, file_path: str):
+        self.file_path = file_path
+        self.classes: Dict[str, ClassMetrics] = {}  # class_name -> finalized metrics
+        self.extends: Dict[str, Optional[str]] = {}  # class_name -> parent_class_name
+        self.error: Optional[str] = None
+        self.ll_fallback = False  # True if the two-stage parse had to re-parse in full LL
+        self.profile: Optional[profiling.FileProfile] = None  # solo con --profile, mai in cache
+
+
+def analyze_java_file(file_path: str, two_stage: bool = False, engine: str = DEFAULT_ENGINE,
+                      profile: bool = False) -> FileResult:
+    """
+    Parse a Java file once and run both consumers on the same tree
+    (or, with the listener engine, on the parser events).
+    Never raises: failures are reported through FileResult.error.
+    With profile, FileResult.profile holds the time spent in each step.
+    """
+    result = FileResult(file_path)
+    with profiling.profile_file(file_path, profile) as file_profile:
+        _analyze_into(result, two_stage, engine)
+    result.profile = file_profile
+    return result
+
+
+def _analyze_into(result: FileResult, two_stage: bool, engine: str):
+    file_path = result.file_path
+    try:
+        if engine == 'lexer':
+            from astra.lexer_engine import analyze_tokens
+            result.extends, result.classes = analyze_tokens(file_path)
+        elif engine == 'listener':
+            from astra.metrics_listener import MetricsListener
+            listener = MetricsListener(file_path)
+            _, result.ll_fallback = parse_compilation_unit(file_path, two_stage, listener)
+            listener.finish()
+            result.extends = listener.graph_builder.inheritance_graph
+            result.classes = listener.metrics.get_results()
+        else:
+            from astra.metrics_visitor import MetricsVisitor
+            tree, result.ll_fallback = parse_compilation_unit(file_path, two_stage)
+
+            graph_builder = InheritanceGraphBuilder()
+            with profiling.step('visit'):
+                graph_builder.build_graph_from_tree(tree, file_path)
+            metrics_visitor = MetricsVisitor(graph_builder.get_graph(), {})
+            metrics_visitor.analyze_tree(tree, file_path)
+
+            result.extends = graph_builder.inheritance_graph
+            result.classes = metrics_visitor.get_results()
+        # Le liste di token non servono più: i conteggi Halstead sono già calcolati
+        for class_metrics in result.classes.values():
+            class_metrics.release_tokens()
+    except Exception as e:
+        result.error = str(e)
+
+
+def _analyze_uncached(java_files: List[str], jobs: int, two_stage: bool, engine: str,
+                      profile: bool = False) -> Iterator[FileResult]:
+    """Analyze files serially (jobs == 1) or on a process pool (jobs > 1), in input order"""
+    if jobs <= 1 or len(java_files) <= 1:
+        for file_path in java_files:
+            yield analyze_java_file(file_path, two_stage, engine, profile)
+        return
+
+    # Grammatica e moduli dell'engine caricati una volta qui: i worker li ereditano con il fork
+    preload_engine(engine)
+    # Blocchi abbastanza grandi da ammortizzare l'IPC, abbastanza piccoli da bilanciare il carico
+    chunksize = max(1, min(64, len(java_files) // (jobs * 8)))
+    with ProcessPoolExecutor(max_workers=jobs) as executor:
+        worker = partial(analyze_java_file, two_stage=two_stage, engine=engine, profile=profile)
+        yield from executor.map(worker, java_files, chunksize=chunksize)
+
+
+def preload_engine(engine: str = DEFAULT_ENGINE):
+    """Import the modules of an engine, the generated grammar and numpy now instead of on the first file"""
+    import numpy  # finalizzazione a batch (calculator)
+    if engine == 'lexer':
+        import astra.lexer_engine
+    elif engine == 'listener':
+        import astra.metrics_listener
+    else:
+        import astra.metrics_visitor
+
+
+def analyze_java_files(java_files: List[str], jobs: int = 1, two_stage: bool = False,
+                       cache: Optional[ResultCache] = None, engine: str = DEFAULT_ENGINE,
+                       profile: bool = False) -> Iterator[FileResult]:
+    """
+    Analyze all files and yield their results in input order, so merging is deterministic.
+    With a cache, files whose content was already analyzed are served from disk
+    and only the misses are parsed (in parallel when jobs > 1).
+    With profile, parsed files carry a FileResult.profile (cached ones do not).
+    """
+    if cache is None:
+        yield from _analyze_uncached(java_files, jobs, two_stage, engine, profile)
+        return
+
+    variant = engine if engine in APPROXIMATE_ENGINES else ''
+    keys = [cache.key_for(file_path, variant) for file_path in java_files]
+    is_miss = [key not in cache for key in keys]
+    fresh_results = _analyze_uncached(
+        [file_path for file_path, miss in zip(java_files, is_miss) if miss], jobs, two_stage, engine, profile)
+
+    for file_path, key, miss in zip(java_files, keys, is_miss):
+        result = None if miss else cache.get(key, file_path)
+        if result is None:
+            # Miss (o voce illeggibile): analisi completa del file
+            result = next(fresh_results) if miss else analyze_java_file(file_path, two_stage, engine, profile)
+            if not result.error:
+                # Le misure descrivono questa esecuzione: la voce in cache non le contiene
+                file_profile, result.profile = result.profile, None
+                cache.put(key, result)
+                result.profile = file_profile
+        yield result
+
+
+def merge_result(result: FileResult, graph_builder: InheritanceGraphBuilder,
+                 classes: Dict[str, ClassMetrics]):
+    """Merge a per-file result into the global graph and class table"""
+    for class_name, parent_class in result.extends.items():
+        graph_builder.register_class(class_name, parent_class, result.file_path)
+    classes.update(result.classes)
+
+
+def resolve_jobs(jobs: int) -> int:
+    """Translate the --jobs value: 0 means one worker per CPU core"""
+    if jobs <= 0:
+        return os.cpu_count() or 1
+    return jobs
@@ -0,0 +1,241 @@
+"""
+Profiling Module
+Built-in instrumentation for --profile: where the time of a run goes.
+
+Two levels are measured, both as wall-clock and CPU time:
+  - phases of the run (parsing, DIT/NOC, charts, report), recorded by the
+    entry point through a Profiler; CPU time includes the worker processes;
+  - steps of every analyzed file (lex, parse, visit, loc, finalize), recorded
+    where the work happens through step(), in the process that analyzes the
+    file, and carried back to the entry point inside FileResult.
+
+With the listener engine metrics are collected while parsing, so its visit time
+is part of 'parse'. Files served from the cache have no steps.
+The summary (throughput, slowest files, peak memory) is printed as a table
+and written as JSON, to compare runs across ASTra versions.
+"""
+
+import json
+import os
+import platform
+import sys
+import time
+from contextlib import contextmanager
+from typing import Dict, List, Optional
+
+from astra import __version__
+from astra.constants import C
+
+try:
+    import resource
+except ImportError:  # Windows: il picco si misura con tracemalloc
+    resource = None
+
+FILE_STEPS = ('lex', 'parse', 'visit', 'loc', 'finalize')
+DEFAULT_SLOWEST_FILES = 10
+# Incrementare quando cambia la struttura del JSON
+PROFILE_FORMAT_VERSION = 1
+
+
+def _cpu_time() -> float:
+    """CPU time of this process plus its terminated children (the worker pool)"""
+    times = os.times()
+    return time.process_time() + times.children_user + times.children_system
+
+
+class FileProfile:
+    """Wall/CPU seconds per step of one file, plus its size"""
+    __slots__ = ('steps', 'wall', 'cpu', 'tokens', 'lines')
+
+    def __init__(self):
+        self.steps: Dict[str, List[float]] = {}  # step -> [wall, cpu]
+        self.wall = 0.0
+        self.cpu = 0.0
+        self.tokens = 0
+        self.lines = 0
+
+    def add(self, name: str, wall: float, cpu: float):
+        totals = self.steps.setdefault(name, [0.0, 0.0])
+        totals[0] += wall
+        totals[1] += cpu
+
+
+# Profilo del file in analisi in questo processo (None = profilazione disattivata)
+_current: Optional[FileProfile] = None
+
+
+def current_file() -> Optional[FileProfile]:
+    return _current
+
+
+@contextmanager
+def step(name: str):
+    """Time a step of the file being analyzed; does nothing when profiling is off"""
+    profile = _current
+    if profile is None:
+        yield
+        return
+    wall, cpu = time.perf_counter(), time.process_time()
+    try:
+        yield
+    finally:
+        profile.add(name, time.perf_counter() - wall, time.process_time() - cpu)
+
+
+@contextmanager
+def profile_file(file_path: str, enabled: bool):
+    """Make a FileProfile current while a file is analyzed; yields it (None when not enabled)"""
+    global _current
+    if not enabled:
+        yield None
+        return
+    profile = FileProfile()
+    _current = profile
+    wall, cpu = time.perf_counter(), time.process_time()
+    try:
+        yield profile
+    finally:
+        profile.wall = time.perf_counter() - wall
+        profile.cpu = time.process_time() - cpu
+        _current = None
+        # Righe fisiche, fuori dal tempo misurato
+        try:
+            with open(file_path, 'rb') as f:
+                profile.lines = f.read().count(b'\n')
+        except OSError:
+            pass
+
+
+class Profiler:
+    """Phase timings and per-file profiles of one run; every method is a no-op when disabled"""
+
+    def __init__(self, enabled: bool = False, slowest: int = DEFAULT_SLOWEST_FILES):
+        self.enabled = enabled
+        self.slowest = slowest
+        self.phases: Dict[str, List[float]] = {}  # fase -> [wall, cpu], in ordine di esecuzione
+        self.files: List[tuple] = []  # (file_path, FileProfile)
+        self.cached_files = 0
+        self._open: Optional[tuple] = None
+        if enabled and resource is None:
+            import tracemalloc
+            tracemalloc.start()
+
+    def phase(self, name: str):
+        """Close the running phase (if any) and start timing the next one"""
+        if not self.enabled:
+            return
+        self.end_phase()
+        self._open = (name, time.perf_counter(), _cpu_time())
+
+    def end_phase(self):
+        if not self.enabled or self._open is None:
+            return
+        name, wall, cpu = self._open
+        self.phases[name] = [time.perf_counter() - wall, _cpu_time() - cpu]
+        self._open = None
+
+    def add_file(self, result):
+        """Record a FileResult; results without a profile were served from the cache"""
+        if not self.enabled:
+            return
+        if result.profile is None:
+            self.cached_files += 1
+        else:
+            self.files.append((result.file_path, result.profile))
+
+    # --- RIEPILOGO ---
+
+    @staticmethod
+    def peak_memory_mb(workers: bool = False) -> Dict[str, float]:
+        """Peak RSS of this process and, with workers, of the largest one (tracemalloc peak where resource is missing)"""
+        if resource is None:
+            import tracemalloc
+            return {'python_heap': tracemalloc.get_traced_memory()[1] / (1024 * 1024)}
+        # ru_maxrss è in KB su Linux, in byte su macOS
+        scale = 1024 * 1024 if sys.platform == 'darwin' else 1024
+        peaks = {'main': resource.getrusage(resource.RUSAGE_SELF).ru_maxrss / scale}
+        if workers:
+            peaks['largest_worker'] = resource.getrusage(resource.RUSAGE_CHILDREN).ru_maxrss / scale
+        return peaks
+
+    def summary(self, run_info: Optional[Dict] = None) -> Dict:
+        """Everything measured, as the JSON-serializable dict written by write_json"""
+        self.end_phase()
+        steps = {name: [0.0, 0.0] for name in FILE_STEPS}
+        tokens = lines = 0
+        for _, profile in self.files:
+            tokens += profile.tokens
+            lines += profile.lines
+            for name, (wall, cpu) in profile.steps.items():
+                totals = steps.setdefault(name, [0.0, 0.0])
+                totals[0] += wall
+                totals[1] += cpu
+
+        # Throughput sul tempo della fase di analisi (la prima), file dalla cache inclusi nei file/s
+        analysis_wall = next(iter(self.phases.values()))[0] if self.phases else 0.0
+        num_files = len(self.files) + self.cached_files
+        slowest = sorted(self.files, key=lambda item: item[1].wall, reverse=True)[:self.slowest]
+        return {
+            'format': PROFILE_FORMAT_VERSION,
+            'astra_version': __version__,
+            'python': platform.python_version(),
+            'platform': platform.platform(),
+            'run': run_info or {},
+            'phases': {name: {'wall': wall, 'cpu': cpu} for name, (wall, cpu) in self.phases.items()},
+            'files': {'total': num_files, 'analyzed': len(self.files), 'cached': self.cached_files,
+                      'tokens': tokens, 'lines': lines},
+            'steps': {name: {'wall': wall, 'cpu': cpu} for name, (wall, cpu) in steps.items()},
+            'throughput': {
+                'files_per_s': num_files / analysis_wall if analysis_wall else 0.0,
+                'tokens_per_s': tokens / analysis_wall if analysis_wall else 0.0,
+                'kloc_per_s': lines / 1000 / analysis_wall if analysis_wall else 0.0,
+            },
+            'slowest_files': [
+                {'file': file_path, 'wall': profile.wall, 'cpu': profile.cpu, 'tokens': profile.tokens,
+                 'lines': profile.lines,
+                 'steps': {name: {'wall': wall, 'cpu': cpu} for name, (wall, cpu) in profile.steps.items()}}
+                for file_path, profile in slowest
+            ],
+            'peak_memory_mb': self.peak_memory_mb((run_info or {}).get('jobs', 1) > 1),
+        }
+
+    @staticmethod
+    def write_json(summary: Dict, path: str):
+        with open(path, 'w', encoding='utf-8') as f:
+            json.dump(summary, f, indent=2)
+
+    @staticmethod
+    def print_summary(summary: Dict):
+        """Human-readable tables of a summary()"""
+        print(f"{C.HEADER}{'=' * 60}{C.END}")
+        print(f"{C.HEADER}Profile{C.END}")
+        print(f"{C.HEADER}{'=' * 60}{C.END}")
+
+        total_wall = sum(phase['wall'] for phase in summary['phases'].values()) or 1.0
+        print(f"{C.BLUE}{'Phase':<28} {'Wall':>9} {'CPU':>9} {'Share':>7}{C.END}")
+        for name, phase in summary['phases'].items():
+            print(f"{name:<28} {phase['wall']:>8.3f}s {phase['cpu']:>8.3f}s {phase['wall'] / total_wall:>6.1%}")
+        print()
+
+        files = summary['files']
+        print(f"{C.BLUE}{'Step (sum over files)':<28} {'Wall':>9} {'CPU':>9}{C.END}")
+        for name, totals in summary['steps'].items():
+            print(f"{name:<28} {totals['wall']:>8.3f}s {totals['cpu']:>8.3f}s")
+        print(f"  {files['analyzed']} files analyzed, {files['cached']} from the cache, "
+              f"{files['tokens']:,} tokens, {files['lines']:,} lines")
+        print()
+
+        throughput = summary['throughput']
+        print(f"{C.BLUE}Throughput (analysis phase):{C.END} {throughput['files_per_s']:,.1f} files/s, "
+              f"{throughput['tokens_per_s']:,.0f} tokens/s, {throughput['kloc_per_s']:,.1f} KLOC/s")
+        memory = ', '.join(f"{name.replace('_', ' ')} {mb:,.1f}MB" for name, mb in summary['peak_memory_mb'].items())
+        print(f"{C.BLUE}Peak memory:{C.END} {memory}")
+        print()
+
+        if summary['slowest_files']:
+            print(f"{C.BLUE}{'Slowest files':<48} {'Wall':>9} {'CPU':>9} {'Tokens':>8}  Slowest step{C.END}")
+            for entry in summary['slowest_files']:
+                name = entry['file'] if len(entry['file']) <= 48 else '...' + entry['file'][-45:]
+                worst = max(entry['steps'].items(), key=lambda item: item[1]['wall'], default=None)
+                worst_text = f"{worst[0]} {worst[1]['wall']:.3f}s" if worst else '-'
+                print(f"{name:<48} {entry['wall']:>8.3f}s {entry['cpu']:>8.3f}s {entry['tokens']:>8,}  {worst_text}")
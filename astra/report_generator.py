@@ -9,9 +9,42 @@ Features:
 - Refactoring Advisor integration
 """
 
-from typing import Dict, List
+import io
+from typing import Dict, Iterable, List, Optional, TextIO, Tuple
 from datetime import datetime
 from astra.advisor import RefactoringAdvisor
+from astra.constants import REPORT_LAYOUTS, DEFAULT_REPORT_LAYOUT
+from astra.metrics_store import MetricsStore
+from astra.virtual_report import write_virtual_details
+
+
+class HtmlStreamWriter:
+    """
+    Buffered sink the report is written into, section by section and row by row.
+    Pieces are collected in a list and handed to the stream in blocks of about
+    buffer_size characters: memory stays bounded by the block size and every
+    piece is copied once, whatever the number of classes and methods.
+    """
+    
+    def __init__(self, stream: TextIO, buffer_size: int = 1 << 16):
+        self.stream = stream
+        self.buffer_size = buffer_size
+        self.chars_written = 0
+        self._pieces: List[str] = []
+        self._pending = 0
+    
+    def write(self, text: str):
+        self._pieces.append(text)
+        self._pending += len(text)
+        if self._pending >= self.buffer_size:
+            self.flush()
+    
+    def flush(self):
+        if self._pieces:
+            self.stream.write(''.join(self._pieces))
+            self.chars_written += self._pending
+            self._pieces.clear()
+            self._pending = 0
 
 
 class ReportGenerator:
@@ -22,23 +55,58 @@ class ReportGenerator:
         """
         Generate a comprehensive HTML report from the data dictionary.
         """
-        html_content = ReportGenerator._generate_html(data)
         with open(output_path, 'w', encoding='utf-8') as f:
-            f.write(html_content)
+            writer = HtmlStreamWriter(f)
+            ReportGenerator.write_report(writer, data)
+            writer.flush()
     
     @staticmethod
     def _generate_html(data: Dict) -> str:
         """Generate the complete HTML content"""
+        buffer = io.StringIO()
+        writer = HtmlStreamWriter(buffer)
+        ReportGenerator.write_report(writer, data)
+        writer.flush()
+        return buffer.getvalue()
+    
+    @staticmethod
+    def write_report(writer: HtmlStreamWriter, data: Dict):
+        """
+        Write the HTML document, class details one at a time.
+        data['classes'] is a list (sorted here), or an iterable already sorted by
+        name together with the precomputed data['critical_classes'].
+        data['layout'] selects how the class details are written (see REPORT_LAYOUTS).
+        """
         
         project_name = data.get('project_name', 'Java Project')
         summary = data.get('summary', {})
         charts = data.get('charts', {})
         classes = data.get('classes', [])
         
-        # Sort classes by name for consistent display
-        sorted_classes = sorted(classes, key=lambda c: c.get('name', ''))
+        if 'critical_classes' in data:
+            sorted_classes = classes
+            critical_classes = data['critical_classes']
+        else:
+            # Sort classes by name for consistent display
+            sorted_classes = sorted(classes, key=lambda c: c.get('name', ''))
+            critical_classes = sorted_classes
         
-        html = f"""<!DOCTYPE html>
+        ReportGenerator.write_document_head(writer, project_name)
+        writer.write(f"""{ReportGenerator._generate_dashboard(summary, charts)}
+            
+            {ReportGenerator._generate_hall_of_shame(critical_classes)}
+            
+            """)
+        if data.get('layout', DEFAULT_REPORT_LAYOUT) == 'virtual':
+            write_virtual_details(writer, sorted_classes)
+        else:
+            ReportGenerator._write_accordion(writer, sorted_classes)
+        ReportGenerator.write_document_tail(writer)
+    
+    @staticmethod
+    def write_document_head(writer: HtmlStreamWriter, project_name: str):
+        """Everything before the first section: styles, page header, opening of the content block"""
+        writer.write(f"""<!DOCTYPE html>
 <html lang="en">
 <head>
     <meta charset="UTF-8">
@@ -429,11 +497,12 @@ class ReportGenerator:
         </div>
         
         <div class="content">
-            {ReportGenerator._generate_dashboard(summary, charts)}
-            
-            {ReportGenerator._generate_hall_of_shame(sorted_classes)}
-            
-            {ReportGenerator._generate_accordion_details(sorted_classes)}
+            """)
+    
+    @staticmethod
+    def write_document_tail(writer: HtmlStreamWriter):
+        """Closing of the content block, footer and end of the document"""
+        writer.write("""
         </div>
         
         <div class="footer">
@@ -442,9 +511,7 @@ class ReportGenerator:
         </div>
     </div>
 </body>
-</html>"""
-        
-        return html
+</html>""")
     
     @staticmethod
     def _generate_dashboard(summary: Dict, charts: Dict) -> str:
@@ -465,14 +532,14 @@ class ReportGenerator:
             charts_html += f'''
             <div class="chart-container">
                 <h3 style="margin-bottom: 15px; color: #667eea;">Complexity Scatter Plot</h3>
-                <img src="data:image/png;base64,{scatter_b64}" alt="Complexity Scatter Plot">
+                {ReportGenerator._chart_markup(scatter_b64, "Complexity Scatter Plot")}
             </div>
             '''
         if radar_b64:
             charts_html += f'''
             <div class="chart-container">
                 <h3 style="margin-bottom: 15px; color: #667eea;">CK Metrics Radar Chart</h3>
-                <img src="data:image/png;base64,{radar_b64}" alt="CK Metrics Radar Chart">
+                {ReportGenerator._chart_markup(radar_b64, "CK Metrics Radar Chart")}
             </div>
             '''
         # --- NUOVO GRAFICO ---
@@ -480,7 +547,7 @@ class ReportGenerator:
             charts_html += f'''
             <div class="chart-container">
                 <h3 style="margin-bottom: 15px; color: #667eea;">MI Distribution</h3>
-                <img src="data:image/png;base64,{dist_b64}" alt="Maintainability Distribution">
+                {ReportGenerator._chart_markup(dist_b64, "Maintainability Distribution")}
             </div>
             '''
         charts_html += '</div>'
@@ -510,6 +577,13 @@ class ReportGenerator:
             </div>
         """
     
+    @staticmethod
+    def _chart_markup(chart: str, alt: str) -> str:
+        """Inline SVG as is (--chart-format svg), otherwise a base64 PNG image"""
+        if chart.startswith('<svg'):
+            return chart
+        return f'<img src="data:image/png;base64,{chart}" alt="{alt}">'
+    
     @staticmethod
     def _generate_hall_of_shame(classes: List[Dict]) -> str:
         """Generate Section B: Hall of Shame - Top 5 Critical Classes"""
@@ -573,62 +647,82 @@ class ReportGenerator:
     @staticmethod
     def _generate_accordion_details(classes: List[Dict]) -> str:
         """Generate Section C: Accordion with all classes and their methods"""
+        buffer = io.StringIO()
+        writer = HtmlStreamWriter(buffer)
+        ReportGenerator._write_accordion(writer, classes)
+        writer.flush()
+        return buffer.getvalue()
+    
+    @staticmethod
+    def _write_accordion(writer: HtmlStreamWriter, classes: Iterable[Dict]):
+        """Section C: opening markup, one item per class, closing markup"""
         
-        accordion_html = ""
+        writer.write("""
+            <div class="section">
+                <h2>📋 Detailed Class Analysis</h2>
+                <p style="margin-bottom: 20px; color: #666;">
+                    Click on any class to expand and view detailed metrics including all Halstead complexity measures.
+                </p>
+                <div class="accordion-container">
+                    """)
         
         for cls in classes:
-            name = cls.get('name', 'Unknown')
-            mi = cls.get('mi', 0.0)
-            wmc = cls.get('wmc', 0)
-            dit = cls.get('dit', 0)
-            noc = cls.get('noc', 0) # --- NOC AGGIUNTO ---
-            cbo = cls.get('cbo', 0)
-            methods = cls.get('methods', [])
-            halstead = cls.get('halstead', {})
-            
-            mi_badge = ReportGenerator._get_mi_badge(mi)
+            ReportGenerator._write_class_item(writer, cls)
+        
+        writer.write("""
+                </div>
+            </div>
+        """)
+    
+    @staticmethod
+    def _write_class_item(writer: HtmlStreamWriter, cls: Dict):
+        """One accordion item; method rows go straight to the writer instead of a growing string"""
+        name = cls.get('name', 'Unknown')
+        mi = cls.get('mi', 0.0)
+        wmc = cls.get('wmc', 0)
+        dit = cls.get('dit', 0)
+        noc = cls.get('noc', 0) # --- NOC AGGIUNTO ---
+        cbo = cls.get('cbo', 0)
+        methods = cls.get('methods', [])
+        halstead = cls.get('halstead', {})
+        
+        mi_badge = ReportGenerator._get_mi_badge(mi)
 
-            tips = cls.get('refactoring_tips', [])
-            tips_html = ""
+        tips = cls.get('refactoring_tips', [])
+        tips_html = ""
 
-            if tips:
-                tips_list = "".join([f"<li>{t}</li>" for t in tips])
-                tips_html = f"""
+        if tips:
+            tips_list = "".join([f"<li>{t}</li>" for t in tips])
+            tips_html = f"""
                 <div class="advisor-box">
                     <h4>💡 Refactoring Suggestions</h4>
                     <ul>{tips_list}</ul>
                 </div>
                 """
-            
-            halstead_html = ReportGenerator._generate_halstead_section(halstead)
-            
-            methods_html = ""
-            if methods:
-                methods_rows = ""
-                for method in methods:
-                    method_name = method.get('name', 'Unknown')
-                    complexity = method.get('complexity', 0)
-                    method_halstead = method.get('halstead', {})
-                    
-                    method_effort = method_halstead.get('E', 0.0)
-                    method_volume = method_halstead.get('V', 0.0)
-                    method_difficulty = method_halstead.get('D', 0.0)
-                    method_time = method_halstead.get('T', 0.0)
-                    method_bugs = method_halstead.get('B', 0.0)
-                    
-                    methods_rows += f"""
-                    <tr>
-                        <td><strong>{method_name}</strong></td>
-                        <td class="metric-value">{complexity}</td>
-                        <td class="metric-value">{method_volume:,.0f}</td>
-                        <td class="metric-value">{method_difficulty:.2f}</td>
-                        <td class="metric-value">{method_effort:,.0f}</td>
-                        <td class="metric-value">{method_time:.2f}s</td>
-                        <td class="metric-value">{method_bugs:.2f}</td>
-                    </tr>
-                    """
-                
-                methods_html = f"""
+        
+        halstead_html = ReportGenerator._generate_halstead_section(halstead)
+        
+        writer.write(f"""
+            <div class="class-item">
+                <details>
+                    <summary>
+                        <div class="class-summary-row">
+                            <span class="class-name">{name}</span>
+                            <span>{mi_badge}</span>
+                            <span class="metric-value">WMC: {wmc}</span>
+                            <span class="metric-value">DIT: {dit}</span>
+                            <span class="metric-value">NOC: {noc}</span> <!-- NOC added -->
+                            <span class="metric-value">CBO: {cbo}</span>
+                        </div>
+                    </summary>
+                    <div class="class-details">
+                        {tips_html}
+                        {halstead_html}
+                    </div>
+                    """)
+        
+        if methods:
+            writer.write(f"""
                 <div class="class-details">
                     <h3 style="margin-bottom: 15px; color: #667eea; font-size: 1.1em;">Methods ({len(methods)})</h3>
                     <table class="methods-table">
@@ -644,51 +738,45 @@ class ReportGenerator:
                             </tr>
                         </thead>
                         <tbody>
-                            {methods_rows}
+                            """)
+            for method in methods:
+                method_name = method.get('name', 'Unknown')
+                complexity = method.get('complexity', 0)
+                method_halstead = method.get('halstead', {})
+                
+                method_effort = method_halstead.get('E', 0.0)
+                method_volume = method_halstead.get('V', 0.0)
+                method_difficulty = method_halstead.get('D', 0.0)
+                method_time = method_halstead.get('T', 0.0)
+                method_bugs = method_halstead.get('B', 0.0)
+                
+                writer.write(f"""
+                    <tr>
+                        <td><strong>{method_name}</strong></td>
+                        <td class="metric-value">{complexity}</td>
+                        <td class="metric-value">{method_volume:,.0f}</td>
+                        <td class="metric-value">{method_difficulty:.2f}</td>
+                        <td class="metric-value">{method_effort:,.0f}</td>
+                        <td class="metric-value">{method_time:.2f}s</td>
+                        <td class="metric-value">{method_bugs:.2f}</td>
+                    </tr>
+                    """)
+            writer.write("""
                         </tbody>
                     </table>
                 </div>
-                """
-            else:
-                methods_html = """
+                """)
+        else:
+            writer.write("""
                 <div class="class-details">
                     <p style="color: #999; font-style: italic;">No methods found</p>
                 </div>
-                """
-            
-            accordion_html += f"""
-            <div class="class-item">
-                <details>
-                    <summary>
-                        <div class="class-summary-row">
-                            <span class="class-name">{name}</span>
-                            <span>{mi_badge}</span>
-                            <span class="metric-value">WMC: {wmc}</span>
-                            <span class="metric-value">DIT: {dit}</span>
-                            <span class="metric-value">NOC: {noc}</span> <!-- NOC added -->
-                            <span class="metric-value">CBO: {cbo}</span>
-                        </div>
-                    </summary>
-                    <div class="class-details">
-                        {tips_html}
-                        {halstead_html}
-                    </div>
-                    {methods_html}
-                </details>
-            </div>
-            """
+                """)
         
-        return f"""
-            <div class="section">
-                <h2>📋 Detailed Class Analysis</h2>
-                <p style="margin-bottom: 20px; color: #666;">
-                    Click on any class to expand and view detailed metrics including all Halstead complexity measures.
-                </p>
-                <div class="accordion-container">
-                    {accordion_html}
-                </div>
+        writer.write("""
+                </details>
             </div>
-        """
+            """)
     
     @staticmethod
     def _generate_halstead_section(halstead: Dict) -> str:
@@ -737,43 +825,91 @@ class ReportGenerator:
         return f'<span class="badge {color_class}">{mi:.1f}</span>'
     
     @staticmethod
-    def generate_html_report(classes, charts: Dict[str, str], output_path: str, num_files: int):
-        """Main entry point. Now accepts num_files explicitly."""
+    def generate_html_report(classes, charts: Dict[str, str], output_path: str, num_files: int,
+                             store: Optional[MetricsStore] = None, layout: str = DEFAULT_REPORT_LAYOUT,
+                             jobs: int = 1) -> Optional[Tuple[int, int]]:
+        """
+        Main entry point. Now accepts num_files explicitly.
+        Totals and orderings come from the columnar store (built here if not given).
+        The paged layout writes its shard pages on `jobs` processes and returns
+        (pages written, pages unchanged).
+        """
+        if store is None:
+            store = MetricsStore(classes)
+        
+        def record(i) -> Dict:
+            # Un record alla volta: il dettaglio di una classe vive solo mentre viene scritto
+            cls = store.classes[i]
+            class_data = ReportGenerator.class_data(cls)
+            class_data['refactoring_tips'] = RefactoringAdvisor.get_class_advice(cls)
+            return class_data
         
         data = {
             'project_name': 'Java Project',
             'summary': {
                 'total_files': num_files,
-                'total_loc': sum(c.loc for c in classes),
-                'avg_mi': sum(c.maintainability_index for c in classes) / len(classes) if classes else 0.0,
-                'god_classes_count': sum(1 for c in classes if c.maintainability_index < 65 or c.wmc > 20)
+                'total_loc': store.total_loc,
+                'avg_mi': store.avg_mi,
+                'god_classes_count': store.critical_count
             },
             'charts': {
                 'scatter_b64': charts.get('complexity_scatter', ''),
                 'radar_b64': charts.get('ck_radar', ''),
                 'mi_distribution': charts.get('mi_distribution', '') # --- PASSATO ISTOGRAMMA ---
             },
-            'classes': []
+            'critical_classes': [record(i) for i in store.most_critical(5)],
+            'classes': (record(i) for i in store.name_order()),
+            'layout': layout
         }
         
-        for cls in classes:
-            tips = RefactoringAdvisor.get_class_advice(cls)
-            class_data = {
-                'name': cls.class_name, 'mi': cls.maintainability_index,
-                'wmc': cls.wmc, 'dit': cls.dit, 'noc': cls.noc, 'cbo': cls.cbo, # --- PASSATO NOC ---
-                'halstead_effort_sum': cls.aggregated_halstead.get('E', 0.0) if cls.aggregated_halstead else 0.0,
-                'halstead': cls.aggregated_halstead if cls.aggregated_halstead else {},
-                'methods': [],
-                'refactoring_tips': tips
-            }
-            
-            for method_name, method in cls.methods.items():
-                method_data = {
-                    'name': method_name, 'complexity': method.cyclomatic_complexity,
-                    'halstead': method.halstead if method.halstead else {}
-                }
-                class_data['methods'].append(method_data)
-            
-            data['classes'].append(class_data)
+        if layout == 'paged':
+            from astra.paged_report import write_paged_report  # importa ReportGenerator
+            return write_paged_report(data['classes'], data, output_path, jobs)
+        ReportGenerator.render(data, output_path)
+        return None
+    
+    @staticmethod
+    def class_data(cls) -> Dict:
+        """Report record of a ClassMetrics (refactoring tips aside, they need the final DIT)"""
+        class_data = {
+            'name': cls.class_name, 'mi': cls.maintainability_index,
+            'wmc': cls.wmc, 'dit': cls.dit, 'noc': cls.noc, 'cbo': cls.cbo, # --- PASSATO NOC ---
+            'loc': cls.loc, 'file': cls.file_path,
+            'halstead_effort_sum': cls.aggregated_halstead.get('E', 0.0) if cls.aggregated_halstead else 0.0,
+            'halstead': cls.aggregated_halstead if cls.aggregated_halstead else {},
+            'methods': []
+        }
         
+        for method_name, method in cls.methods.items():
+            method_data = {
+                'name': method_name, 'complexity': method.cyclomatic_complexity,
+                'halstead': method.halstead if method.halstead else {}
+            }
+            class_data['methods'].append(method_data)
+        return class_data
+    
+    @staticmethod
+    def generate_streaming_report(aggregate, charts: Dict[str, str], output_path: str, num_files: int,
+                                  layout: str = DEFAULT_REPORT_LAYOUT):
+        """
+        Same report from a StreamingAggregate: totals and top classes come precomputed,
+        class details are read back from the spill file one at a time while writing.
+        """
+        data = {
+            'project_name': 'Java Project',
+            'summary': {
+                'total_files': num_files,
+                'total_loc': aggregate.total_loc,
+                'avg_mi': aggregate.avg_mi,
+                'god_classes_count': aggregate.critical_count
+            },
+            'charts': {
+                'scatter_b64': charts.get('complexity_scatter', ''),
+                'radar_b64': charts.get('ck_radar', ''),
+                'mi_distribution': charts.get('mi_distribution', '')
+            },
+            'critical_classes': aggregate.hall_of_shame(),
+            'classes': aggregate.iter_records(),
+            'layout': layout
+        }
         ReportGenerator.render(data, output_path)
\ No newline at end of file
@@ -0,0 +1,236 @@
+"""
+Streaming Aggregation Module
+Bounded-memory alternative to keeping every ClassMetrics until the report is written.
+
+Each per-file result is folded, as it arrives, into:
+- running totals for the KPI cards and the final summary (LOC, MI, critical classes, methods);
+- the MI bucket counts of the distribution chart;
+- two bounded heaps: Hall of Shame (lowest MI, then highest WMC) and radar chart (highest WMC);
+- the (WMC, Volume) pair of the scatter plot, 16 bytes per class in two arrays;
+- a spill file with one pickled record per class (the data of the detail section)
+  and a name -> (offset, position) index to read them back in name order.
+
+DIT/NOC depend on the complete inheritance graph: they are patched into the retained
+top classes at the end and into every detail record as it is read back.
+
+A class declared again in a later file replaces the earlier one, as in the in-memory
+flow: its old contribution is subtracted from the totals, its scatter point is
+overwritten in place and its stale heap entries are discarded when the heaps are read.
+"""
+
+import heapq
+import math
+import os
+import pickle
+import tempfile
+from array import array
+from typing import Dict, Iterator, List, Optional, Tuple
+
+import numpy as np
+
+from astra.advisor import RefactoringAdvisor
+from astra.graph_builder import InheritanceGraphBuilder
+from astra.model import ClassMetrics
+from astra.report_generator import ReportGenerator
+
+# Classi conservate per le sezioni che ne mostrano solo le prime
+HALL_OF_SHAME_SIZE = 5
+RADAR_SIZE = 5
+
+
+class ClassSummary:
+    """The few numbers of a class that the dashboard sections show"""
+    __slots__ = ('class_name', 'maintainability_index', 'wmc', 'dit', 'noc', 'cbo', 'loc', 'effort', 'offset')
+
+    def __init__(self, record: Dict, offset: int):
+        self.class_name = record['name']
+        self.maintainability_index = record['mi']
+        self.wmc = record['wmc']
+        self.cbo = record['cbo']
+        self.loc = record['loc']
+        self.effort = record['halstead_effort_sum']
+        self.dit = 0
+        self.noc = 0
+        self.offset = offset  # identifica la dichiarazione: una ridichiarazione ha un altro offset
+
+    def as_report_row(self) -> Dict:
+        return {'name': self.class_name, 'mi': self.maintainability_index, 'wmc': self.wmc,
+                'dit': self.dit, 'noc': self.noc, 'cbo': self.cbo, 'halstead_effort_sum': self.effort}
+
+
+class _Inverted:
+    """Key wrapper that turns heapq's min-heap into a max-heap"""
+    __slots__ = ('key',)
+
+    def __init__(self, key):
+        self.key = key
+
+    def __lt__(self, other):
+        return other.key < self.key
+
+
+class TopK:
+    """The k items with the smallest keys seen so far (keys must be unique)"""
+
+    def __init__(self, k: int):
+        self.k = k
+        self._heap: List[Tuple[_Inverted, ClassSummary]] = []  # radice = chiave più grande
+
+    def offer(self, key, item: ClassSummary):
+        entry = (_Inverted(key), item)
+        if len(self._heap) < self.k:
+            heapq.heappush(self._heap, entry)
+        elif key < self._heap[0][0].key:
+            heapq.heapreplace(self._heap, entry)
+
+    def items(self) -> List[ClassSummary]:
+        """Retained items, smallest key first"""
+        return [item for _, item in sorted(self._heap, key=lambda e: e[0].key)]
+
+
+def _hall_key(summary: ClassSummary):
+    # Come il report: MI crescente, poi WMC decrescente; a parità vince l'ordine per nome
+    return summary.maintainability_index, -summary.wmc, summary.class_name
+
+
+class StreamingAggregate:
+    """Everything the report needs, accumulated one FileResult at a time"""
+
+    def __init__(self, spill_dir: Optional[str] = None):
+        self._spill = tempfile.TemporaryFile(prefix='astra_spill_', dir=spill_dir)
+        self._index: Dict[str, Tuple[int, int]] = {}  # nome -> (offset del record, posizione)
+        self._graph: Optional[InheritanceGraphBuilder] = None
+
+        self.num_classes = 0
+        self.num_methods = 0
+        self.total_loc = 0
+        self.mi_sum = 0.0
+        self.critical_count = 0
+        self.mi_buckets = [0, 0, 0]  # verde (>85), giallo (65-85), rosso (<65)
+
+        self._hall = TopK(HALL_OF_SHAME_SIZE)
+        self._radar = TopK(RADAR_SIZE)
+        self._scatter_x = array('d')  # WMC per posizione della classe (NaN = fuori dal grafico)
+        self._scatter_y = array('d')  # Volume di Halstead
+
+    # --- ACCUMULO ---
+
+    def add_result(self, result, graph_builder: InheritanceGraphBuilder):
+        """Streaming counterpart of pipeline.merge_result"""
+        for class_name, parent_class in result.extends.items():
+            graph_builder.register_class(class_name, parent_class, result.file_path)
+        for class_metrics in result.classes.values():
+            self.add_class(class_metrics)
+
+    def add_class(self, class_metrics: ClassMetrics):
+        record = ReportGenerator.class_data(class_metrics)
+        previous = self._index.get(record['name'])
+        if previous is not None:
+            # Ridichiarazione: la classe mantiene la posizione della prima, come in un dict
+            self._account(self._read(previous[0]), -1)
+            position = previous[1]
+        else:
+            position = len(self._scatter_x)
+            self._scatter_x.append(math.nan)
+            self._scatter_y.append(math.nan)
+
+        self._spill.seek(0, os.SEEK_END)
+        offset = self._spill.tell()
+        pickle.dump(record, self._spill, protocol=pickle.HIGHEST_PROTOCOL)
+        self._index[record['name']] = (offset, position)
+        self._account(record, +1)
+
+        volume = record['halstead'].get('V', 0)
+        plotted = volume > 0 and record['wmc'] > 0
+        self._scatter_x[position] = record['wmc'] if plotted else math.nan
+        self._scatter_y[position] = volume if plotted else math.nan
+
+        summary = ClassSummary(record, offset)
+        self._hall.offer(_hall_key(summary), summary)
+        self._radar.offer((-summary.wmc, position), summary)
+
+    def _account(self, record: Dict, sign: int):
+        mi = record['mi']
+        self.num_classes += sign
+        self.num_methods += sign * len(record['methods'])
+        self.total_loc += sign * record['loc']
+        self.mi_sum += sign * mi
+        self.critical_count += sign * (mi < 65 or record['wmc'] > 20)
+        bucket = 0 if mi > 85 else (1 if mi >= 65 else 2)
+        self.mi_buckets[bucket] += sign
+
+    def _read(self, offset: int) -> Dict:
+        self._spill.seek(offset)
+        return pickle.load(self._spill)
+
+    # --- FINALIZZAZIONE ---
+
+    def finalize(self, graph_builder: InheritanceGraphBuilder):
+        """Attach the complete inheritance graph and patch DIT/NOC into the retained classes"""
+        self._graph = graph_builder
+        self._hall = self._valid_heap(self._hall, _hall_key)
+        self._radar = self._valid_heap(self._radar, lambda s: (-s.wmc, self._index[s.class_name][1]))
+        for heap in (self._hall, self._radar):
+            for summary in heap.items():
+                summary.dit = graph_builder.calculate_dit(summary.class_name)
+                summary.noc = graph_builder.calculate_noc(summary.class_name)
+
+    def _valid_heap(self, heap: TopK, key) -> TopK:
+        """Drop entries superseded by a later declaration; rescan the spill file if too few remain"""
+        valid = [s for s in heap.items() if self._index[s.class_name][0] == s.offset]
+        if len(valid) >= min(heap.k, len(self._index)):
+            rebuilt = TopK(heap.k)
+            for summary in valid:
+                rebuilt.offer(key(summary), summary)
+            return rebuilt
+        rebuilt = TopK(heap.k)
+        for offset, _ in self._index.values():
+            summary = ClassSummary(self._read(offset), offset)
+            rebuilt.offer(key(summary), summary)
+        return rebuilt
+
+    # --- LETTURA ---
+
+    @property
+    def avg_mi(self) -> float:
+        return self.mi_sum / self.num_classes if self.num_classes else 0.0
+
+    def hall_of_shame(self) -> List[Dict]:
+        return [summary.as_report_row() for summary in self._hall.items()]
+
+    def radar_classes(self) -> List[ClassSummary]:
+        return self._radar.items()
+
+    def scatter_arrays(self) -> Tuple[np.ndarray, np.ndarray, np.ndarray]:
+        """(WMC, Volume, name) arrays of the plotted classes in class order, as MetricsStore.scatter_arrays"""
+        x_all = np.array(self._scatter_x, dtype=np.float64)
+        plotted = ~np.isnan(x_all)
+        names = np.empty(len(x_all), dtype=object)
+        for name, (_, position) in self._index.items():
+            names[position] = name
+        y_all = np.array(self._scatter_y, dtype=np.float64)
+        return x_all[plotted], y_all[plotted], names[plotted]
+    
+    def iter_records(self) -> Iterator[Dict]:
+        """Detail records sorted by class name, with DIT/NOC and refactoring tips filled in"""
+        for name in sorted(self._index):
+            record = self._read(self._index[name][0])
+            record['dit'] = self._graph.calculate_dit(name) if self._graph else 0
+            record['noc'] = self._graph.calculate_noc(name) if self._graph else 0
+            record['refactoring_tips'] = RefactoringAdvisor.get_class_advice(_AdvisorView(record))
+            yield record
+
+    def close(self):
+        self._spill.close()
+
+
+class _AdvisorView:
+    """Attribute view of a detail record for RefactoringAdvisor.get_class_advice"""
+    __slots__ = ('maintainability_index', 'wmc', 'loc', 'cbo', 'dit')
+
+    def __init__(self, record: Dict):
+        self.maintainability_index = record['mi']
+        self.wmc = record['wmc']
+        self.loc = record['loc']
+        self.cbo = record['cbo']
+        self.dit = record['dit']
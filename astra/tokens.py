@@ -0,0 +1,74 @@
+"""
+Token Classification Module
+Halstead/McCabe classification of Java20Lexer token types, computed once.
+
+Every keyword and symbol of the grammar has its own token type with a fixed
+text, and an Identifier can never spell a keyword (even contextual keywords
+such as `yield` have their own type), so whether a terminal is an operator,
+an operand or a `&&`/`||`/`?` complexity increment depends only on its type.
+The table below replaces per-terminal string membership tests with a single
+list lookup.
+"""
+
+from typing import List
+
+KEYWORD_OPERATORS = {
+    'if', 'else', 'while', 'for', 'do', 'switch', 'case', 'catch', 'try', 'finally',
+    'return', 'break', 'continue', 'throw', 'new', 'instanceof', 'assert',
+    'synchronized', 'yield', 'default'
+}
+SEPARATOR_OPERATORS = {';', '{', '}', '(', ')', '[', ']', ',', '.', ':'}
+OPERATOR_TOKENS = {
+    '+', '-', '*', '/', '%', '=', '==', '!=', '<', '>', '<=', '>=',
+    '&&', '||', '!', '&', '|', '^', '~', '<<', '>>', '>>>',
+    '+=', '-=', '*=', '/=', '%=', '&=', '|=', '^=', '<<=', '>>=', '>>>=',
+    '++', '--', '?', '::'
+}
+OPERAND_TOKEN_NAMES = {
+    'Identifier', 'IntegerLiteral', 'FloatingPointLiteral', 'BooleanLiteral',
+    'CharacterLiteral', 'StringLiteral', 'NullLiteral'
+}
+CC_OPERATORS = {'&&', '||', '?'}
+
+# Flag di classificazione (combinabili)
+IGNORE = 0
+OPERATOR = 1
+OPERAND = 2
+CC_INCREMENT = 4
+
+
+def is_operator(text: str) -> bool:
+    return text in OPERATOR_TOKENS or text in SEPARATOR_OPERATORS or text in KEYWORD_OPERATORS
+
+
+def is_operand(token_name: str, text: str) -> bool:
+    if token_name == 'Identifier':
+        return text not in KEYWORD_OPERATORS
+    return token_name in OPERAND_TOKEN_NAMES
+
+
+def build_token_classes(lexer_class) -> List[int]:
+    """
+    Classification flags indexed by token type.
+    The list has one extra trailing IGNORE slot, so that EOF (type -1) also maps to IGNORE.
+    """
+    literal_names = list(lexer_class.literalNames)
+    symbolic_names = list(lexer_class.symbolicNames)
+    size = max(len(literal_names), len(symbolic_names))
+    classes = [IGNORE] * (size + 1)
+
+    for token_type in range(1, size):
+        literal = literal_names[token_type] if token_type < len(literal_names) else '<INVALID>'
+        name = symbolic_names[token_type] if token_type < len(symbolic_names) else '<INVALID>'
+        # Token a testo fisso (parole chiave, simboli, ma anche NullLiteral): il testo è noto
+        fixed = literal.startswith("'") and literal.endswith("'") and len(literal) > 2
+        text = literal[1:-1] if fixed else None
+        flags = IGNORE
+        if text is not None and is_operator(text):
+            flags = OPERATOR
+        elif name in OPERAND_TOKEN_NAMES:
+            flags = OPERAND
+        if text in CC_OPERATORS:
+            flags |= CC_INCREMENT
+        classes[token_type] = flags
+    return classes
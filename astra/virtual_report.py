@@ -0,0 +1,302 @@
+"""
+Virtual Report Layout
+Data-driven alternative to the accordion of Section C for very large projects.
+
+The accordion puts every class and method table into the DOM, which makes the
+report tens of MB for big code bases. This layout embeds the class and method
+metrics once, as a compact JSON blob (one positional array per class), and a
+small inline script renders on the client:
+- only the rows inside the scrolled window (virtual scrolling, fixed row height);
+- the Halstead and methods tables of a class only when it is opened;
+- sorting by any column and filtering by name and MI category.
+The file stays self-contained and works offline: no external script or style.
+"""
+
+import json
+from typing import Dict, Iterable, List
+
+from astra.calculator import HALSTEAD_KEYS
+
+# Ordine dei campi nelle righe JSON (il client li legge per posizione)
+CLASS_FIELDS = ('name', 'mi', 'wmc', 'dit', 'noc', 'cbo', 'loc', 'effort', 'halstead', 'tips', 'methods')
+METHOD_FIELDS = ('name', 'complexity', 'V', 'D', 'E', 'T', 'B')
+
+
+def class_row(cls: Dict) -> List:
+    """Positional JSON row of a report record (see ReportGenerator.class_data)"""
+    halstead = cls.get('halstead', {})
+    methods = []
+    for method in cls.get('methods', []):
+        method_halstead = method.get('halstead', {})
+        methods.append([method.get('name', 'Unknown'), method.get('complexity', 0)] +
+                       [method_halstead.get(key, 0.0) for key in METHOD_FIELDS[2:]])
+    return [
+        cls.get('name', 'Unknown'), cls.get('mi', 0.0), cls.get('wmc', 0), cls.get('dit', 0),
+        cls.get('noc', 0), cls.get('cbo', 0), cls.get('loc', 0), cls.get('halstead_effort_sum', 0.0),
+        [halstead.get(key, 0) for key in HALSTEAD_KEYS] if halstead else None,
+        cls.get('refactoring_tips', []), methods,
+    ]
+
+
+def _json(value) -> str:
+    # "</" chiuderebbe il tag <script> che contiene il blob
+    return json.dumps(value, separators=(',', ':'), ensure_ascii=False).replace('</', '<\\/')
+
+
+def write_virtual_details(writer, classes: Iterable[Dict]):
+    """Section C as JSON data plus the client-side renderer; classes are streamed one row at a time"""
+    writer.write(VIRTUAL_SECTION_HTML)
+    writer.write('<script type="application/json" id="astra-data">{"fields":')
+    writer.write(_json({'class': CLASS_FIELDS, 'method': METHOD_FIELDS, 'halstead': HALSTEAD_KEYS}))
+    writer.write(',"classes":[')
+    separator = ''
+    for cls in classes:
+        writer.write(separator)
+        writer.write(_json(class_row(cls)))
+        separator = ','
+    writer.write(']}</script>')
+    writer.write(VIRTUAL_SCRIPT)
+
+
+VIRTUAL_SECTION_HTML = """
+            <div class="section">
+                <h2>📋 Detailed Class Analysis</h2>
+                <p style="margin-bottom: 20px; color: #666;">
+                    Click on any class to expand and view detailed metrics including all Halstead complexity measures.
+                    Click a column header to sort.
+                </p>
+                <style>
+                    .vs-toolbar { display: flex; gap: 12px; flex-wrap: wrap; align-items: center; margin-bottom: 12px; }
+                    .vs-toolbar input, .vs-toolbar select { padding: 8px 12px; border: 1px solid #ddd; border-radius: 6px; font-size: 0.95em; }
+                    .vs-toolbar input { flex: 1; min-width: 220px; }
+                    .vs-count { color: #666; font-size: 0.9em; }
+                    .vs-grid { display: grid; grid-template-columns: minmax(200px, 3fr) 90px repeat(5, minmax(60px, 1fr)); align-items: center; gap: 10px; padding: 0 15px; }
+                    .vs-header { background: #667eea; color: white; font-weight: 600; height: 42px; border-radius: 8px 8px 0 0; }
+                    .vs-header span { cursor: pointer; user-select: none; }
+                    .vs-header span.sorted::after { content: ' ▲'; font-size: 0.8em; }
+                    .vs-header span.sorted.desc::after { content: ' ▼'; }
+                    .vs-viewport { position: relative; height: 640px; overflow-y: auto; border: 1px solid #e0e0e0; border-top: none; border-radius: 0 0 8px 8px; }
+                    .vs-layer { position: absolute; left: 0; right: 0; top: 0; }
+                    .vs-row { position: absolute; left: 0; right: 0; height: 46px; border-bottom: 1px solid #f0f0f0; cursor: pointer; background: #fafafa; }
+                    .vs-row:hover, .vs-row.open { background: #f0f0ff; }
+                    .vs-row .class-name { overflow: hidden; text-overflow: ellipsis; white-space: nowrap; }
+                    .vs-detail { position: absolute; left: 0; right: 0; background: white; border-bottom: 1px solid #e0e0e0; }
+                    .vs-empty { padding: 30px; text-align: center; color: #999; font-style: italic; }
+                </style>
+                <div class="vs-toolbar">
+                    <input type="search" id="vs-filter" placeholder="Filter classes by name...">
+                    <select id="vs-category">
+                        <option value="all">All MI categories</option>
+                        <option value="green">Green (MI &gt;= 85)</option>
+                        <option value="yellow">Yellow (65 &lt;= MI &lt; 85)</option>
+                        <option value="red">Red (MI &lt; 65)</option>
+                    </select>
+                    <span class="vs-count" id="vs-count"></span>
+                </div>
+                <div class="vs-grid vs-header" id="vs-header">
+                    <span data-key="0">Class</span>
+                    <span data-key="1">MI</span>
+                    <span data-key="2" class="metric-value">WMC</span>
+                    <span data-key="3" class="metric-value">DIT</span>
+                    <span data-key="4" class="metric-value">NOC</span>
+                    <span data-key="5" class="metric-value">CBO</span>
+                    <span data-key="6" class="metric-value">LOC</span>
+                </div>
+                <div class="vs-viewport" id="vs-viewport">
+                    <div id="vs-spacer"></div>
+                    <div class="vs-layer" id="vs-layer"></div>
+                </div>
+            </div>
+            """
+
+VIRTUAL_SCRIPT = """
+<script>
+(function () {
+    var data = JSON.parse(document.getElementById('astra-data').textContent);
+    var classes = data.classes;
+    var ROW_HEIGHT = 46, OVERSCAN = 8;
+    var NAME = 0, MI = 1, HALSTEAD = 8, TIPS = 9, METHODS = 10;
+    var HALSTEAD_ROWS = [
+        ['Unique Operators', 'n₁', 0, 0, 'Distinct operators'], ['Unique Operands', 'n₂', 0, 0, 'Distinct operands'],
+        ['Total Operators', 'N₁', 0, 0, 'Operator occurrences'], ['Total Operands', 'N₂', 0, 0, 'Operand occurrences'],
+        ['Length', 'N', 0, 0, 'N₁ + N₂'], ['Vocabulary', 'n', 0, 0, 'n₁ + n₂'],
+        ['Volume', 'V', 2, 1, 'Size in bits'], ['Difficulty', 'D', 2, 0, 'Complexity'],
+        ['Effort', 'E', 2, 1, 'Mental effort'], ['Time', 'T', 2, 0, 'Coding time', ' s'],
+        ['Level', 'L', 4, 0, 'Abstraction'], ['Bugs', 'B', 2, 0, 'Est. defects']
+    ];
+
+    var viewport = document.getElementById('vs-viewport');
+    var spacer = document.getElementById('vs-spacer');
+    var layer = document.getElementById('vs-layer');
+    var header = document.getElementById('vs-header');
+    var filterInput = document.getElementById('vs-filter');
+    var categorySelect = document.getElementById('vs-category');
+    var counter = document.getElementById('vs-count');
+
+    var view = [];            // indici delle classi visibili, nell'ordine corrente
+    var sortKey = NAME, sortDesc = false;
+    var openPos = -1, openExtra = 0, openHtml = '';
+    var pending = false;
+
+    function esc(text) {
+        return String(text).replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;').replace(/"/g, '&quot;');
+    }
+    function num(value, digits, grouped) {
+        return Number(value).toLocaleString('en-US', {
+            minimumFractionDigits: digits, maximumFractionDigits: digits, useGrouping: !!grouped
+        });
+    }
+    // Stesse soglie del badge MI (ReportGenerator._get_mi_badge)
+    function category(mi) { return mi >= 85 ? 'green' : (mi >= 65 ? 'yellow' : 'red'); }
+    function badge(mi) {
+        return '<span class="badge badge-' + category(mi) + '">' + num(mi, 1) + '</span>';
+    }
+
+    function detailHtml(cls) {
+        var html = '<div class="class-details">';
+        if (cls[TIPS].length) {
+            html += '<div class="advisor-box"><h4>💡 Refactoring Suggestions</h4><ul>';
+            cls[TIPS].forEach(function (tip) { html += '<li>' + esc(tip) + '</li>'; });
+            html += '</ul></div>';
+        }
+        var halstead = cls[HALSTEAD];
+        if (!halstead) {
+            html += '<div class="class-details"><p>No Halstead metrics available</p></div>';
+        } else {
+            html += '<div class="halstead-section"><h4>📊 Halstead Complexity Metrics</h4><table class="halstead-table">' +
+                '<thead><tr><th>Metric</th><th>Symbol</th><th>Value</th><th>Description</th></tr></thead><tbody>';
+            HALSTEAD_ROWS.forEach(function (row, i) {
+                html += '<tr><td>' + row[0] + '</td><td>' + row[1] + '</td><td>' + num(halstead[i], row[2], row[3]) +
+                    (row[5] || '') + '</td><td>' + row[4] + '</td></tr>';
+            });
+            html += '</tbody></table></div>';
+        }
+        html += '</div>';
+        var methods = cls[METHODS];
+        if (!methods.length) {
+            return html + '<div class="class-details"><p style="color: #999; font-style: italic;">No methods found</p></div>';
+        }
+        html += '<div class="class-details"><h3 style="margin-bottom: 15px; color: #667eea; font-size: 1.1em;">Methods (' +
+            methods.length + ')</h3><table class="methods-table"><thead><tr><th>Method Name</th><th>CC</th>' +
+            '<th>Volume (V)</th><th>Difficulty (D)</th><th>Effort (E)</th><th>Time (T)</th><th>Bugs (B)</th></tr></thead><tbody>';
+        methods.forEach(function (m) {
+            html += '<tr><td><strong>' + esc(m[0]) + '</strong></td><td class="metric-value">' + m[1] + '</td>' +
+                '<td class="metric-value">' + num(m[2], 0, true) + '</td><td class="metric-value">' + num(m[3], 2) + '</td>' +
+                '<td class="metric-value">' + num(m[4], 0, true) + '</td><td class="metric-value">' + num(m[5], 2) + 's</td>' +
+                '<td class="metric-value">' + num(m[6], 2) + '</td></tr>';
+        });
+        return html + '</tbody></table></div>';
+    }
+
+    function top(pos) { return pos * ROW_HEIGHT + (openPos >= 0 && pos > openPos ? openExtra : 0); }
+    function posAt(offset) {
+        var pos = Math.floor(offset / ROW_HEIGHT);
+        if (openPos >= 0 && pos > openPos) pos = Math.max(openPos, Math.floor((offset - openExtra) / ROW_HEIGHT));
+        return pos;
+    }
+
+    function render() {
+        pending = false;
+        spacer.style.height = (view.length * ROW_HEIGHT + (openPos >= 0 ? openExtra : 0)) + 'px';
+        if (!view.length) {
+            layer.innerHTML = '<div class="vs-empty">No classes match the current filter</div>';
+            return;
+        }
+        var first = Math.max(0, posAt(viewport.scrollTop) - OVERSCAN);
+        var last = Math.min(view.length, posAt(viewport.scrollTop + viewport.clientHeight) + 1 + OVERSCAN);
+        var html = '';
+        for (var pos = first; pos < last; pos++) {
+            var cls = classes[view[pos]];
+            html += '<div class="vs-row vs-grid' + (pos === openPos ? ' open' : '') + '" data-pos="' + pos +
+                '" style="top: ' + top(pos) + 'px" tabindex="0">' +
+                '<span class="class-name">' + esc(cls[NAME]) + '</span><span>' + badge(cls[MI]) + '</span>' +
+                '<span class="metric-value">' + cls[2] + '</span><span class="metric-value">' + cls[3] + '</span>' +
+                '<span class="metric-value">' + cls[4] + '</span><span class="metric-value">' + cls[5] + '</span>' +
+                '<span class="metric-value">' + cls[6] + '</span></div>';
+        }
+        if (openPos >= first && openPos < last) {
+            html += '<div class="vs-detail" id="vs-detail" style="top: ' + (top(openPos) + ROW_HEIGHT) + 'px">' + openHtml + '</div>';
+        }
+        layer.innerHTML = html;
+    }
+    function schedule() {
+        if (!pending) {
+            pending = true;
+            window.requestAnimationFrame(render);
+        }
+    }
+
+    function toggle(pos) {
+        if (pos === openPos) {
+            openPos = -1;
+            openExtra = 0;
+        } else {
+            // Il dettaglio viene costruito solo ora, per la sola classe aperta
+            openPos = pos;
+            openHtml = detailHtml(classes[view[pos]]);
+            openExtra = 0;
+            render();
+            var detail = document.getElementById('vs-detail');
+            openExtra = detail ? detail.offsetHeight : 0;
+        }
+        render();
+    }
+
+    function compare(a, b) {
+        var x = classes[a][sortKey], y = classes[b][sortKey];
+        var order = x < y ? -1 : (x > y ? 1 : 0);
+        if (sortDesc) order = -order;
+        return order || a - b;  // a parità resta l'ordine per nome
+    }
+    function refresh() {
+        var query = filterInput.value.trim().toLowerCase();
+        var wanted = categorySelect.value;
+        view = [];
+        for (var i = 0; i < classes.length; i++) {
+            var cls = classes[i];
+            if (query && cls[NAME].toLowerCase().indexOf(query) < 0) continue;
+            if (wanted !== 'all' && category(cls[MI]) !== wanted) continue;
+            view.push(i);
+        }
+        if (sortKey !== NAME || sortDesc) view.sort(compare);
+        openPos = -1;
+        openExtra = 0;
+        counter.textContent = 'Showing ' + view.length.toLocaleString('en-US') + ' of ' +
+            classes.length.toLocaleString('en-US') + ' classes';
+        Array.prototype.forEach.call(header.children, function (span) {
+            var sorted = Number(span.getAttribute('data-key')) === sortKey;
+            span.classList.toggle('sorted', sorted);
+            span.classList.toggle('desc', sorted && sortDesc);
+        });
+        viewport.scrollTop = 0;
+        render();
+    }
+
+    layer.addEventListener('click', function (event) {
+        var row = event.target.closest('.vs-row');
+        if (row) toggle(Number(row.getAttribute('data-pos')));
+    });
+    layer.addEventListener('keydown', function (event) {
+        var row = event.target.closest('.vs-row');
+        if (row && (event.key === 'Enter' || event.key === ' ')) {
+            event.preventDefault();
+            toggle(Number(row.getAttribute('data-pos')));
+        }
+    });
+    header.addEventListener('click', function (event) {
+        var key = event.target.getAttribute('data-key');
+        if (key === null) return;
+        key = Number(key);
+        // Stessa colonna: inverte il verso; nuova colonna numerica: dal valore più alto
+        sortDesc = key === sortKey ? !sortDesc : key !== NAME && key !== MI;
+        sortKey = key;
+        refresh();
+    });
+    filterInput.addEventListener('input', refresh);
+    categorySelect.addEventListener('change', refresh);
+    viewport.addEventListener('scroll', schedule);
+    window.addEventListener('resize', schedule);
+    refresh();
+})();
+</script>
+"""
@@ -0,0 +1,773 @@
+"""
+ASTra - Benchmark Suite
+Measures the performance of the analysis pipeline on real or synthetic corpora.
+Timing only: that the optimized code paths still produce the reference results
+is checked by the test suite (python -m unittest, see tests/), whose reference
+implementations are also the baselines timed here.
+
+Usage:
+    python benchmark.py parse <input_directory> [--replicate N] [--repeat R]
+    python benchmark.py regress <input_directory>
+    python benchmark.py scaling [--sizes 1000,5000,10000,50000]
+    python benchmark.py engines <input_directory> [--replicate N] [--repeat R]
+    python benchmark.py drift [<input_directory>]
+    python benchmark.py terminals <input_directory> [--replicate N] [--repeat R]
+    python benchmark.py dispatch <input_directory> [--replicate N] [--repeat R]
+    python benchmark.py stress [--depth N]
+    python benchmark.py streaming [--sizes 1000,10000,50000]
+    python benchmark.py store [--sizes 10000,100000] [--repeat R]
+    python benchmark.py calculator [--size N] [--seed S] [--repeat R]
+    python benchmark.py report [--sizes 1000,10000,50000] [--methods M] [--layout accordion|virtual]
+    python benchmark.py charts [--sizes 1000,10000,50000,100000]
+    python benchmark.py startup [<input_directory>] [--repeat R]
+    python benchmark.py corpus [--files 1000,10000] [--classes-per-file N] [--seed S] [--jobs J]
+"""
+
+import sys
+import time
+import shutil
+import argparse
+import tempfile
+from pathlib import Path
+from concurrent.futures import ProcessPoolExecutor
+
+from astra.constants import C
+
+
+# ============================================================
+# Helpers
+# ============================================================
+
+def replicate_corpus(source_dir: Path, copies: int, target_dir: Path) -> Path:
+    """
+    Build a larger corpus by copying every .java file of source_dir `copies` times.
+    Each copy lives in its own package directory, so the files stay independent.
+    """
+    for i in range(copies):
+        copy_dir = target_dir / f"copy{i:04d}"
+        copy_dir.mkdir(parents=True, exist_ok=True)
+        for java_file in source_dir.rglob('*.java'):
+            shutil.copyfile(java_file, copy_dir / java_file.name)
+    return target_dir
+
+
+def write_synthetic_classes(target_dir: Path, num_classes: int, classes_per_file: int = 10) -> Path:
+    """Seeded synthetic corpus of (at least) num_classes classes, see astra.corpus_generator"""
+    from astra.corpus_generator import CorpusSpec, generate_corpus
+    generate_corpus(target_dir, CorpusSpec.for_classes(num_classes, classes_per_file, methods_per_class=2,
+                                                       method_length=6))
+    return target_dir
+
+
+def run_isolated(fn, *args):
+    """
+    Run fn(*args) in a fresh worker process.
+    Keeps ANTLR's per-process DFA cache cold, so measurements do not warm each other up.
+    """
+    with ProcessPoolExecutor(max_workers=1) as executor:
+        return executor.submit(fn, *args).result()
+
+
+def print_table(title: str, headers, rows):
+    """Print a simple aligned table"""
+    widths = [max(len(str(h)), *(len(str(r[i])) for r in rows)) for i, h in enumerate(headers)]
+    print(f"{C.HEADER}{title}{C.END}")
+    print("  " + "  ".join(str(h).ljust(w) for h, w in zip(headers, widths)))
+    print("  " + "  ".join('-' * w for w in widths))
+    for row in rows:
+        print("  " + "  ".join(str(v).ljust(w) for v, w in zip(row, widths)))
+    print()
+
+
+# ============================================================
+# parse: full LL vs two-stage SLL -> LL
+# ============================================================
+
+def _time_parse(java_files, two_stage: bool):
+    from astra.parsing import parse_compilation_unit, ParseStats
+    ParseStats.reset()
+    start = time.perf_counter()
+    for file_path in java_files:
+        parse_compilation_unit(file_path, two_stage)
+    return time.perf_counter() - start, ParseStats.ll_fallbacks
+
+
+def bench_parse(args):
+    input_path = Path(args.input_dir)
+    with tempfile.TemporaryDirectory(prefix='astra_bench_') as tmp:
+        corpus = input_path
+        if args.replicate > 1:
+            corpus = replicate_corpus(input_path, args.replicate, Path(tmp))
+        java_files = [str(f) for f in corpus.rglob('*.java')]
+        print(f"{C.BLUE}Corpus: {corpus} ({len(java_files)} files){C.END}\n")
+
+        rows = []
+        baseline = None
+        for label, two_stage in (('LL', False), ('SLL -> LL', True)):
+            timings = []
+            fallbacks = 0
+            for _ in range(args.repeat):
+                elapsed, fallbacks = run_isolated(_time_parse, java_files, two_stage)
+                timings.append(elapsed)
+            best = min(timings)
+            baseline = baseline or best
+            rows.append([label, f"{best:.3f}s", f"{len(java_files) / best:.1f}",
+                         fallbacks if two_stage else '-', f"{baseline / best:.2f}x"])
+
+    print_table('Parse strategy', ['Mode', 'Best time', 'Files/s', 'LL fallbacks', 'Speedup'], rows)
+
+
+# ============================================================
+# regress: legacy two-pass pipeline vs single-parse pipeline
+# ============================================================
+
+def _time_pipeline(pipeline, input_dir: str) -> float:
+    from tests import support
+    start = time.perf_counter()
+    getattr(support, pipeline)(input_dir)
+    return time.perf_counter() - start
+
+
+def bench_regress(args):
+    # Report identici: verificato da tests/test_pipeline.py
+    legacy_time = run_isolated(_time_pipeline, 'legacy_two_pass', args.input_dir)
+    single_time = run_isolated(_time_pipeline, 'single_parse', args.input_dir)
+    print_table('Pipelines', ['Pipeline', 'Time', 'Speedup'], [
+        ['Two-pass (legacy)', f"{legacy_time:.3f}s", '1.00x'],
+        ['Single-parse', f"{single_time:.3f}s", f"{legacy_time / single_time:.2f}x"],
+    ])
+
+
+# ============================================================
+# scaling: per-class cost of the shared visitor from 1k to 50k classes
+# ============================================================
+
+def _time_shared_visitor(java_files):
+    """Analyze all files with a single MetricsVisitor, as the two-pass flow does"""
+    from astra.metrics_visitor import MetricsVisitor
+    metrics_visitor = MetricsVisitor({}, {})
+    start = time.perf_counter()
+    for file_path in java_files:
+        metrics_visitor.analyze_file(file_path)
+    return time.perf_counter() - start, len(metrics_visitor.get_results())
+
+
+def bench_scaling(args):
+    rows = []
+    for size in (int(s) for s in args.sizes.split(',')):
+        with tempfile.TemporaryDirectory(prefix='astra_scaling_') as tmp:
+            corpus = write_synthetic_classes(Path(tmp), size)
+            java_files = [str(f) for f in corpus.rglob('*.java')]
+            elapsed, num_classes = run_isolated(_time_shared_visitor, java_files)
+        rows.append([size, len(java_files), num_classes, f"{elapsed:.2f}s",
+                     f"{elapsed / max(1, num_classes) * 1e6:.0f}"])
+        print(f"  {C.GREEN}{size} classes done{C.END}")
+    print()
+    # Con una finalizzazione lineare il costo per classe resta (circa) costante
+    print_table('Scaling (shared MetricsVisitor)', ['Classes', 'Files', 'Analyzed', 'Time', 'us/class'], rows)
+
+
+# ============================================================
+# engines: parse tree + visitor vs parse listener without tree
+# ============================================================
+
+def _run_engine(java_files, engine: str, trace_memory: bool):
+    """Analyze every file with one engine; returns (time, peak bytes of the worst file)"""
+    import tracemalloc
+    from astra.pipeline import analyze_java_file
+    peak = 0
+    start = time.perf_counter()
+    for file_path in java_files:
+        if trace_memory:
+            tracemalloc.start()
+        analyze_java_file(file_path, engine=engine)
+        if trace_memory:
+            peak = max(peak, tracemalloc.get_traced_memory()[1])
+            tracemalloc.stop()
+    return time.perf_counter() - start, peak
+
+
+def bench_engines(args):
+    input_path = Path(args.input_dir)
+    with tempfile.TemporaryDirectory(prefix='astra_engines_') as tmp:
+        corpus = input_path
+        if args.replicate > 1:
+            corpus = replicate_corpus(input_path, args.replicate, Path(tmp))
+        java_files = [str(f) for f in corpus.rglob('*.java')]
+        print(f"{C.BLUE}Corpus: {corpus} ({len(java_files)} files){C.END}\n")
+
+        rows = []
+        baseline_time = baseline_peak = None
+        for engine in ('visitor', 'listener'):
+            # Tempo e memoria in esecuzioni separate: tracemalloc rallenta le allocazioni
+            best = min(run_isolated(_run_engine, java_files, engine, False)[0] for _ in range(args.repeat))
+            _, peak = run_isolated(_run_engine, java_files, engine, True)
+            baseline_time = baseline_time or best
+            baseline_peak = baseline_peak or peak
+            rows.append([engine, f"{best:.3f}s", f"{len(java_files) / best:.1f}", f"{peak / 1024 / 1024:.2f} MB",
+                         f"{baseline_time / best:.2f}x", f"{peak / max(1, baseline_peak) * 100:.0f}%"])
+
+    # Risultati identici: verificato da tests/test_engines.py
+    print_table('Analysis engine', ['Engine', 'Best time', 'Files/s', 'Peak/file', 'Speedup', 'Memory'], rows)
+
+
+# ============================================================
+# drift: lexer-only engine vs full parse
+# ============================================================
+
+DRIFT_METRICS = [
+    ('LOC', lambda cm: cm.loc),
+    ('Methods', lambda cm: len(cm.methods)),
+    ('WMC', lambda cm: cm.wmc),
+    ('Halstead N1', lambda cm: (cm.aggregated_halstead or {}).get('N1', 0)),
+    ('Halstead N2', lambda cm: (cm.aggregated_halstead or {}).get('N2', 0)),
+    ('Halstead V', lambda cm: (cm.aggregated_halstead or {}).get('V', 0.0)),
+    ('MI', lambda cm: cm.maintainability_index),
+    ('CBO', lambda cm: cm.cbo),
+]
+
+
+def _analyze_with(java_files, engine: str):
+    """Run the single-parse pipeline with the given engine; returns (time, classes, extends edges)"""
+    from astra.graph_builder import InheritanceGraphBuilder
+    from astra.pipeline import analyze_java_files, merge_result
+    graph_builder = InheritanceGraphBuilder()
+    classes = {}
+    start = time.perf_counter()
+    for result in analyze_java_files(java_files, engine=engine):
+        merge_result(result, graph_builder, classes)
+    return time.perf_counter() - start, classes, graph_builder.inheritance_graph
+
+
+def bench_drift(args):
+    java_files = [str(f) for f in Path(args.input_dir).rglob('*.java')]
+    ref_time, reference, ref_graph = run_isolated(_analyze_with, java_files, 'visitor')
+    lex_time, approx, lex_graph = run_isolated(_analyze_with, java_files, 'lexer')
+
+    common = [name for name in reference if name in approx]
+    print_table('Coverage', ['Engine', 'Time', 'Classes', 'Extends edges'], [
+        ['visitor (reference)', f"{ref_time:.3f}s", len(reference), len(ref_graph)],
+        ['lexer', f"{lex_time:.3f}s ({ref_time / max(lex_time, 1e-9):.1f}x)", len(approx), len(lex_graph)],
+    ])
+    missing = sorted(set(reference) - set(approx))
+    extra = sorted(set(approx) - set(reference))
+    if missing:
+        print(f"  {C.WARN}Only in the full parse: {', '.join(missing[:10])}{C.END}")
+    if extra:
+        print(f"  {C.WARN}Only in the lexer engine: {', '.join(extra[:10])}{C.END}")
+    same_edges = sum(1 for name in ref_graph if name in lex_graph and lex_graph[name] == ref_graph[name])
+    print(f"  Extends edges matching: {same_edges}/{len(ref_graph)}\n")
+
+    rows = []
+    for label, metric in DRIFT_METRICS:
+        deltas = [abs(metric(approx[n]) - metric(reference[n])) for n in common]
+        relative = [d / max(abs(metric(reference[n])), 1) for d, n in zip(deltas, common)]
+        exact = sum(1 for d in deltas if d < 1e-9)
+        rows.append([label, f"{sum(deltas) / max(1, len(deltas)):.2f}", f"{max(deltas, default=0):.2f}",
+                     f"{sum(relative) / max(1, len(relative)) * 100:.1f}%", f"{exact}/{len(common)}"])
+    print_table(f"Class-level drift ({len(common)} classes in both)",
+                ['Metric', 'Mean |delta|', 'Max |delta|', 'Mean rel.', 'Exact'], rows)
+
+    pairs = [(m, approx[n].methods[k]) for n in common for k, m in reference[n].methods.items()
+             if k in approx[n].methods]
+    total_methods = sum(len(reference[n].methods) for n in common)
+    cc_exact = sum(1 for ref, lex in pairs if ref.cyclomatic_complexity == lex.cyclomatic_complexity)
+    n1_exact = sum(1 for ref, lex in pairs if ref.halstead and lex.halstead and ref.halstead['N1'] == lex.halstead['N1'])
+    print_table('Method-level agreement', ['Matched methods', 'Same CC', 'Same N1'], [
+        [f"{len(pairs)}/{total_methods}", f"{cc_exact}/{len(pairs)}", f"{n1_exact}/{len(pairs)}"],
+    ])
+
+
+# ============================================================
+# terminals: visitor terminal path, string tests vs lookup table
+# ============================================================
+
+def _time_terminals(java_files, replicate: int, repeat: int):
+    from antlr4.tree.Tree import TerminalNodeImpl
+    from astra.metrics_visitor import MetricsVisitor, MethodMetrics
+    from astra.parsing import lex_file
+    from tests.support import legacy_visit_terminal
+    nodes = [TerminalNodeImpl(tok) for file_path in java_files for tok in lex_file(file_path)] * replicate
+
+    outcome = {}
+    for label, visit_terminal in (('string tests', legacy_visit_terminal), ('lookup table', MetricsVisitor.visitTerminal)):
+        best = float('inf')
+        for _ in range(repeat):
+            visitor = MetricsVisitor({}, {})
+            visitor.current_method = MethodMetrics('bench', 'Bench')
+            start = time.perf_counter()
+            for node in nodes:
+                visit_terminal(visitor, node)
+            best = min(best, time.perf_counter() - start)
+        outcome[label] = best
+    return len(nodes), outcome
+
+
+def bench_terminals(args):
+    java_files = [str(f) for f in Path(args.input_dir).rglob('*.java')]
+    num_nodes, outcome = run_isolated(_time_terminals, java_files, args.replicate, args.repeat)
+    baseline = outcome['string tests']
+    rows = [[label, f"{elapsed:.3f}s", f"{elapsed / max(1, num_nodes) * 1e9:.0f}", f"{baseline / elapsed:.2f}x"]
+            for label, elapsed in outcome.items()]
+    # Stessi conteggi sui due percorsi: verificato da tests/test_visitor.py
+    print_table(f"visitTerminal ({num_nodes} terminals)", ['Path', 'Best time', 'ns/terminal', 'Speedup'], rows)
+
+
+# ============================================================
+# dispatch: accept()/hasattr traversal vs rule-index dispatch table
+# ============================================================
+
+def _count_nodes(tree) -> int:
+    count = 0
+    stack = [tree]
+    while stack:
+        node = stack.pop()
+        count += 1
+        stack.extend(getattr(node, 'children', None) or ())
+    return count
+
+
+def _time_dispatch(java_files, replicate: int, repeat: int):
+    from astra.metrics_visitor import MetricsVisitor
+    from astra.parsing import parse_compilation_unit
+    from tests.support import recursive_visitor
+    trees = [(file_path, parse_compilation_unit(file_path)[0]) for file_path in java_files]
+    num_nodes = sum(_count_nodes(tree) for _, tree in trees) * replicate
+
+    outcome = {}
+    for label, visitor_class in (('accept + hasattr', recursive_visitor()), ('dispatch table', MetricsVisitor)):
+        best = float('inf')
+        for _ in range(repeat):
+            visitor = visitor_class({}, {})
+            start = time.perf_counter()
+            for _ in range(replicate):
+                for file_path, tree in trees:
+                    visitor.current_file_path = file_path
+                    visitor.current_method = visitor.current_class = None
+                    try:
+                        visitor.visit(tree)
+                    except Exception:
+                        pass  # stesso comportamento di analyze_tree: la visita del file si interrompe
+            best = min(best, time.perf_counter() - start)
+        outcome[label] = best
+    return num_nodes, outcome
+
+
+def bench_dispatch(args):
+    java_files = [str(f) for f in Path(args.input_dir).rglob('*.java')]
+    num_nodes, outcome = run_isolated(_time_dispatch, java_files, args.replicate, args.repeat)
+    baseline = outcome['accept + hasattr']
+    rows = [[label, f"{elapsed:.3f}s", f"{elapsed / max(1, num_nodes) * 1e9:.0f}", f"{baseline / elapsed:.2f}x"]
+            for label, elapsed in outcome.items()]
+    # Stesse metriche con le due visite: verificato da tests/test_visitor.py
+    print_table(f"Tree traversal ({num_nodes} nodes visited)", ['Traversal', 'Best time', 'ns/node', 'Speedup'], rows)
+
+
+# ============================================================
+# stress: deeply nested expressions (recursive visit vs explicit stack)
+# ============================================================
+
+def _try_visit(visitor_class, tree, file_path: str):
+    """Visit one tree; returns (status, elapsed)"""
+    visitor = visitor_class({}, {})
+    visitor.current_file_path = file_path
+    start = time.perf_counter()
+    try:
+        visitor.visit(tree)
+    except RecursionError:
+        return 'RecursionError', time.perf_counter() - start
+    return 'ok', time.perf_counter() - start
+
+
+def _run_stress(file_path: str):
+    from astra.metrics_visitor import MetricsVisitor
+    from astra.parsing import parse_compilation_unit
+    from tests.support import recursive_visitor, tree_depth
+    start = time.perf_counter()
+    try:
+        tree, _ = parse_compilation_unit(file_path)
+    except RecursionError:
+        return {'parse': 'RecursionError'}
+
+    outcome = {'parse': 'ok', 'parse_time': time.perf_counter() - start, 'tree_depth': tree_depth(tree)}
+    outcome['recursive'], outcome['recursive_time'] = _try_visit(recursive_visitor(), tree, file_path)
+    outcome['walker'], outcome['walker_time'] = _try_visit(MetricsVisitor, tree, file_path)
+    return outcome
+
+
+def bench_stress(args):
+    from tests.support import STRESS_SHAPES, stress_source
+    rows = []
+    with tempfile.TemporaryDirectory(prefix='astra_stress_') as tmp:
+        for shape in STRESS_SHAPES:
+            file_path = Path(tmp) / f"{shape.replace(' ', '_')}.java"
+            file_path.write_text(stress_source(shape, args.depth), encoding='utf-8')
+            outcome = run_isolated(_run_stress, str(file_path))
+            if outcome['parse'] != 'ok':
+                rows.append([shape, f"parser: {outcome['parse']}", '-', '-', '-', '-'])
+                continue
+            rows.append([shape, outcome['tree_depth'], f"{outcome['parse_time'] * 1000:.1f}ms",
+                         f"{outcome['recursive']} ({outcome['recursive_time'] * 1000:.1f}ms)",
+                         f"{outcome['walker']} ({outcome['walker_time'] * 1000:.1f}ms)",
+                         f"{outcome['walker_time'] * 1e9 / outcome['tree_depth']:.0f}"])
+
+    # La correttezza (profondità, walker, engine) è verificata da tests/test_stress.py
+    print_table(f"Deep expressions ({args.depth} terms, recursion limit {sys.getrecursionlimit()})",
+                ['Shape', 'Tree depth', 'Parse', 'Recursive visit', 'Explicit stack', 'ns/level'], rows)
+
+
+# ============================================================
+# streaming: peak RSS of the in-memory flow vs --streaming
+# ============================================================
+
+def _report_run(java_files, streaming: bool, output_path: str):
+    """Analysis + DIT/NOC + HTML report (no charts) as main_opt does; returns (time, peak RSS in MB)"""
+    import resource
+    from tests.support import write_report
+    start = time.perf_counter()
+    write_report(java_files, streaming, output_path)
+    # ru_maxrss è in KB su Linux, in byte su macOS
+    scale = 1024 * 1024 if sys.platform == 'darwin' else 1024
+    return time.perf_counter() - start, resource.getrusage(resource.RUSAGE_SELF).ru_maxrss / scale
+
+
+def bench_streaming(args):
+    sizes = [int(s) for s in args.sizes.split(',')]
+    rows = []
+    for num_classes in sizes:
+        with tempfile.TemporaryDirectory(prefix='astra_streaming_') as tmp:
+            corpus = write_synthetic_classes(Path(tmp) / 'src', num_classes)
+            java_files = [str(f) for f in corpus.rglob('*.java')]
+            for label, streaming in (('in-memory', False), ('streaming', True)):
+                output_path = Path(tmp) / f"{label}.html"
+                elapsed, peak_mb = run_isolated(_report_run, java_files, streaming, str(output_path))
+                rows.append([num_classes, label, f"{elapsed:.2f}s", f"{peak_mb:.1f} MB"])
+
+    # Report identici nelle due modalità: verificato da tests/test_pipeline.py
+    print_table('Peak RSS by project size', ['Classes', 'Mode', 'Time', 'Peak RSS'], rows)
+
+
+# ============================================================
+# store: per-consumer Python passes vs the columnar MetricsStore
+# ============================================================
+
+def bench_store(args):
+    from tests.support import python_aggregates, random_classes, store_aggregates
+    rows = []
+    for num_classes in (int(s) for s in args.sizes.split(',')):
+        classes = random_classes(num_classes)
+        timings = {label: _best_time(lambda: fn(classes), args.repeat)[0]
+                   for label, fn in (('Python passes', python_aggregates), ('MetricsStore', store_aggregates))}
+        baseline = timings['Python passes']
+        for label, elapsed in timings.items():
+            rows.append([num_classes, label, f"{elapsed * 1000:.1f}ms", f"{baseline / elapsed:.2f}x"])
+
+    # Stessi aggregati e ordinamenti: verificato da tests/test_metrics_store.py
+    print_table('Summaries, chart series and report orderings', ['Classes', 'Implementation', 'Best time', 'Speedup'], rows)
+
+
+# ============================================================
+# calculator: scalar vs vectorized Halstead / Maintainability Index
+# ============================================================
+
+def _best_time(fn, repeat: int):
+    best = float('inf')
+    result = None
+    for _ in range(repeat):
+        start = time.perf_counter()
+        result = fn()
+        best = min(best, time.perf_counter() - start)
+    return best, result
+
+
+def bench_calculator(args):
+    import numpy as np
+    from astra.calculator import HalsteadCalculator, MaintainabilityCalculator
+    from tests.support import random_counts
+
+    rows = random_counts(args.size, args.seed)
+    columns = np.array(rows, dtype=np.int64).reshape(-1, 4).T
+    scalar_time, scalar = _best_time(lambda: [HalsteadCalculator.calculate(*row) for row in rows], args.repeat)
+    batch_time, _ = _best_time(
+        lambda: HalsteadCalculator.batch_to_dicts(HalsteadCalculator.calculate_batch(*columns)), args.repeat)
+    # Valori identici bit per bit: verificato da tests/test_calculator.py
+    table = [['Halstead', args.size, f"{scalar_time * 1000:.1f}ms", f"{batch_time * 1000:.1f}ms",
+              f"{scalar_time / batch_time:.2f}x"]]
+
+    mi_inputs = [(h['V'], cc, loc) for h, cc, loc in
+                 zip(scalar, (row[0] % 50 for row in rows), (row[3] % 5000 - 1 for row in rows))]
+    volumes, complexities, locs = (list(col) for col in zip(*mi_inputs)) if mi_inputs else ([], [], [])
+    scalar_time, _ = _best_time(
+        lambda: [MaintainabilityCalculator.calculate(*item) for item in mi_inputs], args.repeat)
+    batch_time, _ = _best_time(
+        lambda: MaintainabilityCalculator.calculate_batch(volumes, complexities, locs).tolist(), args.repeat)
+    table.append(['Maintainability Index', args.size, f"{scalar_time * 1000:.1f}ms", f"{batch_time * 1000:.1f}ms",
+                  f"{scalar_time / batch_time:.2f}x"])
+
+    print_table('Scalar formulas vs vectorized batches', ['Metric', 'Items', 'Scalar', 'Batch', 'Speedup'], table)
+
+
+# ============================================================
+# report: write time and memory of the streamed HTML report
+# ============================================================
+
+def _synthetic_records(num_classes: int, methods_per_class: int, seed: int = 42):
+    """Report records generated one at a time, already sorted by name"""
+    import random
+    rnd = random.Random(seed)
+    for n in range(num_classes):
+        halstead = {key: rnd.uniform(0, 10000) for key in ('n1', 'n2', 'N1', 'N2', 'N', 'n', 'V', 'D', 'E', 'T', 'L', 'B')}
+        yield {
+            'name': f"C{n:07d}", 'mi': rnd.uniform(0, 120), 'wmc': rnd.randint(0, 60),
+            'dit': rnd.randint(0, 6), 'noc': rnd.randint(0, 4), 'cbo': rnd.randint(0, 15),
+            'halstead_effort_sum': halstead['E'], 'halstead': halstead,
+            'refactoring_tips': ["Split the class"] if n % 3 == 0 else [],
+            'methods': [{'name': f"m{m}", 'complexity': rnd.randint(1, 20), 'halstead': halstead}
+                        for m in range(methods_per_class)],
+        }
+
+
+def bench_report(args):
+    import os
+    import tracemalloc
+    from astra.report_generator import ReportGenerator
+
+    summary = {'total_files': 0, 'total_loc': 0, 'avg_mi': 0.0, 'god_classes_count': 0}
+    rows = []
+    per_class = []
+    with tempfile.TemporaryDirectory(prefix='astra_bench_') as tmp:
+        output_path = os.path.join(tmp, 'report.html')
+        for num_classes in (int(s) for s in args.sizes.split(',')):
+            data = {'summary': summary, 'charts': {}, 'critical_classes': [], 'layout': args.layout,
+                    'classes': _synthetic_records(num_classes, args.methods)}
+            tracemalloc.start()
+            start = time.perf_counter()
+            ReportGenerator.render(data, output_path)
+            elapsed = time.perf_counter() - start
+            peak = tracemalloc.get_traced_memory()[1]
+            tracemalloc.stop()
+            per_class.append(elapsed / num_classes)
+            rows.append([num_classes, f"{elapsed:.2f}s", f"{per_class[-1] * 1e6:.1f}us",
+                         f"{os.path.getsize(output_path) / (1024 * 1024):.1f}MB", f"{peak / (1024 * 1024):.2f}MB"])
+
+    print_table(f"Streamed HTML report, {args.layout} layout ({args.methods} methods per class)",
+                ['Classes', 'Write time', 'Per class', 'File size', 'Peak traced memory'], rows)
+    # Scrittura lineare: il costo per classe non deve crescere con il numero di classi
+    if max(per_class) <= 2 * min(per_class):
+        print(f"{C.GREEN}Write time grows linearly with the number of classes.{C.END}")
+    else:
+        print(f"{C.WARN}The per-class write time varies more than 2x across sizes.{C.END}")
+
+
+# ============================================================
+# charts: PNG vs SVG chart output
+# ============================================================
+
+def bench_charts(args):
+    import os
+    from astra.chart_generator import CHART_FORMATS, ChartGenerator
+    from astra.metrics_store import MetricsStore
+    from astra.report_generator import ReportGenerator
+    from tests.support import random_classes
+
+    rows = []
+    with tempfile.TemporaryDirectory(prefix='astra_bench_') as tmp:
+        for num_classes in (int(s) for s in args.sizes.split(',')):
+            classes = random_classes(num_classes)
+            store = MetricsStore(classes)
+            for chart_format in CHART_FORMATS:
+                timings = {}
+                start = time.perf_counter()
+                charts = ChartGenerator.generate_all_charts(store, chart_format, timings=timings)
+                elapsed = time.perf_counter() - start
+                per_chart = ', '.join(f"{name} {seconds:.2f}s" for name, (seconds, _) in timings.items())
+                chart_bytes = sum(len(chart.encode('utf-8')) for chart in charts.values())
+                output_path = os.path.join(tmp, f"report_{chart_format}.html")
+                ReportGenerator.generate_html_report(classes, charts, output_path, 0, store)
+                rows.append([num_classes, chart_format, f"{elapsed:.2f}s", per_chart, f"{chart_bytes / 1024:,.0f}KB",
+                             f"{os.path.getsize(output_path) / (1024 * 1024):.1f}MB"])
+
+    print_table('Chart generation (parallel) and embedded size',
+                ['Classes', 'Format', 'Wall time', 'Per chart', 'Charts in report', 'Report size'], rows)
+
+
+# ============================================================
+# Startup
+# ============================================================
+
+# Eseguito in un interprete nuovo: argv = engine, file...
+_STARTUP_PROBE = r"""
+import json, sys, time
+start = time.perf_counter()
+import main_opt
+cli = time.perf_counter()
+loaded_by_cli = [name for name in ('matplotlib', 'numpy', 'astra.report_generator', 'Java20Parser', 'grammar.Java20Parser')
+                 if name in sys.modules]
+from astra.pipeline import analyze_java_file, preload_engine
+engine, files = sys.argv[1], sys.argv[2:]
+preload_engine(engine)
+grammar = time.perf_counter()
+analyze_java_file(files[0], engine=engine)
+first = time.perf_counter()
+for file_path in files[1:]:
+    analyze_java_file(file_path, engine=engine)
+rest = time.perf_counter()
+print(json.dumps({'cli': cli - start, 'grammar': grammar - cli, 'first': first - grammar,
+                  'next': (rest - first) / max(1, len(files) - 1), 'loaded_by_cli': loaded_by_cli}))
+"""
+
+
+def bench_startup(args):
+    import json
+    import subprocess
+    from astra.pipeline import ENGINES
+
+    java_files = sorted(str(f.resolve()) for f in Path(args.input_dir).rglob('*.java'))
+    if not java_files:
+        print(f"{C.FAIL}No .java files found in {args.input_dir}{C.END}")
+        sys.exit(1)
+    project_dir = Path(__file__).resolve().parent
+
+    rows = []
+    loaded_by_cli = set()
+    for engine in ENGINES:
+        best = {}
+        for _ in range(args.repeat):
+            # Ogni misura in un processo nuovo: niente moduli o ATN già in memoria
+            completed = subprocess.run([sys.executable, '-c', _STARTUP_PROBE, engine, *java_files], cwd=project_dir,
+                                       capture_output=True, text=True, check=True)
+            probe = json.loads(completed.stdout.strip().splitlines()[-1])
+            loaded_by_cli.update(probe.pop('loaded_by_cli'))
+            for phase, seconds in probe.items():
+                best[phase] = min(best.get(phase, float('inf')), seconds)
+        rows.append([engine, f"{best['cli'] * 1000:.0f}ms", f"{best['grammar'] * 1000:.0f}ms",
+                     f"{best['first'] * 1000:.0f}ms", f"{best['next'] * 1000:.1f}ms",
+                     f"{(best['cli'] + best['grammar'] + best['first']) * 1000:.0f}ms"])
+
+    print_table(f"Start-up of a fresh process ({len(java_files)} files, best of {args.repeat})",
+                ['Engine', 'CLI import', 'Grammar/ATN load', 'First file', 'Next files (each)', 'Time to first parse'],
+                rows)
+    # Moduli rinviati davvero non caricati dalla CLI: verificato da tests/test_startup.py
+    print(f"Loaded by the CLI import: {', '.join(sorted(loaded_by_cli)) or 'nothing heavy'}")
+
+
+# ============================================================
+# corpus: end-to-end run on generated source trees
+# ============================================================
+
+def bench_corpus(args):
+    from astra.corpus_generator import CorpusSpec, generate_corpus
+
+    rows = []
+    for num_files in (int(s) for s in args.files.split(',')):
+        with tempfile.TemporaryDirectory(prefix='astra_corpus_') as tmp:
+            spec = CorpusSpec(files=num_files, classes_per_file=args.classes_per_file, seed=args.seed)
+            start = time.perf_counter()
+            stats = generate_corpus(Path(tmp) / 'src', spec, args.jobs)
+            generated = time.perf_counter() - start
+            java_files = sorted(str(f) for f in (Path(tmp) / 'src').rglob('*.java'))
+            # Analisi, DIT/NOC e report (senza grafici) in un processo nuovo, come main_opt con --jobs 1
+            elapsed, peak_mb = run_isolated(_report_run, java_files, False, str(Path(tmp) / 'report.html'))
+        rows.append([f"{stats.files:,}", f"{stats.classes:,}", f"{stats.lines / 1000:,.0f}k", f"{generated:.1f}s",
+                     f"{elapsed:.1f}s", f"{stats.files / elapsed:,.0f}", f"{stats.lines / 1000 / elapsed:,.1f}",
+                     f"{peak_mb:,.0f}MB"])
+        print(f"  {C.GREEN}{num_files} files done{C.END}")
+    print()
+    print_table(f"Generated corpus (seed {args.seed}): analysis + report",
+                ['Files', 'Classes', 'Lines', 'Generate', 'Analyze + report', 'Files/s', 'KLOC/s', 'Peak RSS'], rows)
+
+
+# ============================================================
+# Entry point
+# ============================================================
+
+def main():
+    parser = argparse.ArgumentParser(description='ASTra - Benchmark Suite')
+    subparsers = parser.add_subparsers(dest='command', required=True)
+
+    p = subparsers.add_parser('parse', help='Compare full LL parsing with the two-stage SLL -> LL strategy')
+    p.add_argument('input_dir', type=str, help='Directory containing Java source files')
+    p.add_argument('--replicate', type=int, default=1, help='Copy the corpus N times to build a larger synthetic corpus')
+    p.add_argument('--repeat', type=int, default=3, help='Repetitions per mode (best time is reported)')
+    p.set_defaults(func=bench_parse)
+
+    p = subparsers.add_parser('regress', help='Time the legacy two-pass pipeline against the single-parse pipeline')
+    p.add_argument('input_dir', type=str, help='Directory containing Java source files')
+    p.set_defaults(func=bench_regress)
+
+    p = subparsers.add_parser('scaling', help='Per-class analysis cost as the number of classes grows (should stay flat)')
+    p.add_argument('--sizes', type=str, default='1000,5000,10000,50000', help='Comma-separated class counts')
+    p.set_defaults(func=bench_scaling)
+
+    p = subparsers.add_parser('engines', help='Compare time and peak memory of the visitor and listener engines')
+    p.add_argument('input_dir', type=str, help='Directory containing Java source files')
+    p.add_argument('--replicate', type=int, default=1, help='Copy the corpus N times to build a larger synthetic corpus')
+    p.add_argument('--repeat', type=int, default=3, help='Repetitions per engine (best time is reported)')
+    p.set_defaults(func=bench_engines)
+
+    p = subparsers.add_parser('drift', help='Report how far the lexer-only engine drifts from the full parse')
+    p.add_argument('input_dir', type=str, nargs='?', default='examples', help='Directory containing Java source files (default: examples)')
+    p.set_defaults(func=bench_drift)
+
+    p = subparsers.add_parser('terminals', help='Micro-benchmark of the visitor terminal path (string tests vs lookup table)')
+    p.add_argument('input_dir', type=str, help='Directory containing Java source files (their tokens are replayed)')
+    p.add_argument('--replicate', type=int, default=20, help='Replay the token stream N times')
+    p.add_argument('--repeat', type=int, default=3, help='Repetitions per path (best time is reported)')
+    p.set_defaults(func=bench_terminals)
+
+    p = subparsers.add_parser('dispatch', help='Per-node cost of accept()/hasattr traversal vs the rule-index dispatch table')
+    p.add_argument('input_dir', type=str, help='Directory containing Java source files (parsed once, visited repeatedly)')
+    p.add_argument('--replicate', type=int, default=20, help='Visit every tree N times per measurement')
+    p.add_argument('--repeat', type=int, default=3, help='Repetitions per traversal (best time is reported)')
+    p.set_defaults(func=bench_dispatch)
+
+    p = subparsers.add_parser('stress', help='Walk deeply nested expressions with the recursive visit and the explicit-stack walker')
+    p.add_argument('--depth', type=int, default=10000, help='Number of terms in each generated expression')
+    p.set_defaults(func=bench_stress)
+
+    p = subparsers.add_parser('streaming', help='Peak RSS of the in-memory flow vs the bounded-memory streaming mode')
+    p.add_argument('--sizes', type=str, default='1000,10000,50000', help='Comma-separated class counts')
+    p.set_defaults(func=bench_streaming)
+
+    p = subparsers.add_parser('store', help='Summaries and orderings: per-consumer Python passes vs the columnar MetricsStore')
+    p.add_argument('--sizes', type=str, default='10000,100000', help='Comma-separated class counts')
+    p.add_argument('--repeat', type=int, default=3, help='Repetitions per implementation (best time is reported)')
+    p.set_defaults(func=bench_store)
+
+    p = subparsers.add_parser('calculator', help='Time the scalar Halstead/MI formulas against the vectorized batches')
+    p.add_argument('--size', type=int, default=100000, help='Number of random count tuples')
+    p.add_argument('--seed', type=int, default=42, help='Random seed (the inputs are reproducible)')
+    p.add_argument('--repeat', type=int, default=3, help='Repetitions per implementation (best time is reported)')
+    p.set_defaults(func=bench_calculator)
+
+    p = subparsers.add_parser('report', help='Write time and peak memory of the streamed HTML report as the class count grows')
+    p.add_argument('--sizes', type=str, default='1000,10000,50000', help='Comma-separated class counts')
+    p.add_argument('--methods', type=int, default=8, help='Methods per synthetic class')
+    p.add_argument('--layout', choices=('accordion', 'virtual'), default='accordion', help='Report layout of the class details')
+    p.set_defaults(func=bench_report)
+
+    p = subparsers.add_parser('charts', help='Chart generation time and report size with PNG and SVG charts')
+    p.add_argument('--sizes', type=str, default='1000,10000,50000,100000', help='Comma-separated class counts')
+    p.set_defaults(func=bench_charts)
+
+    p = subparsers.add_parser('startup', help='Time-to-first-parse of a fresh process, split into CLI import, grammar load and first file')
+    p.add_argument('input_dir', type=str, nargs='?', default='examples', help='Directory containing Java source files (default: examples)')
+    p.add_argument('--repeat', type=int, default=5, help='Fresh processes per engine (best time is reported)')
+    p.set_defaults(func=bench_startup)
+
+    p = subparsers.add_parser('corpus', help='Generate seeded Java source trees and time analysis + report on them')
+    p.add_argument('--files', type=str, default='1000,10000', help='Comma-separated file counts')
+    p.add_argument('--classes-per-file', type=int, default=2, help='Classes per generated file')
+    p.add_argument('--seed', type=int, default=42, help='Corpus seed (same seed, same files)')
+    p.add_argument('--jobs', '-j', type=int, default=1, help='Worker processes writing the corpus')
+    p.set_defaults(func=bench_corpus)
+
+    args = parser.parse_args()
+    if hasattr(args, 'input_dir') and not Path(args.input_dir).is_dir():
+        print(f"Error: '{args.input_dir}' is not a directory.")
+        sys.exit(1)
+    args.func(args)
+
+
+if __name__ == '__main__':
+    main()
@@ -3,19 +3,18 @@ ASTra - Java Static Analysis Tool
 Main entry point for the analysis tool.
 
 Usage:
-    python main.py <input_directory> [--output <output_file>]
+    python main.py <input_directory> [--output <output_file>] [--incremental]
 """
 
-import os
 import sys
 import argparse
 from pathlib import Path
 
 from astra.graph_builder import InheritanceGraphBuilder
-from astra.metrics_visitor import MetricsVisitor
-from astra.chart_generator import ChartGenerator
-from astra.report_generator import ReportGenerator
+from astra.pipeline import DEFAULT_ENGINE, analyze_java_files, merge_result
+from astra.cache import DEFAULT_CACHE_DIR
 from astra.constants import C, DEFAULT_OUTPUT_DIR
+from astra.profiling import Profiler
 
 
 def main():
@@ -43,6 +42,31 @@ Examples:
         help='Output HTML report filename (default: astra_report.html). Reports are saved in the output/ directory.'
     )
     
+    parser.add_argument(
+        '--two-stage',
+        action='store_true',
+        help='Parse with fast SLL prediction first and re-parse with full LL only when it fails'
+    )
+    
+    parser.add_argument(
+        '--incremental',
+        action='store_true',
+        help='Re-parse only files added or modified since the last run (state is kept in the cache directory)'
+    )
+    
+    parser.add_argument(
+        '--cache-dir',
+        type=str,
+        default=DEFAULT_CACHE_DIR,
+        help=f'Directory where --incremental keeps its state (default: {DEFAULT_CACHE_DIR})'
+    )
+    
+    parser.add_argument(
+        '--profile',
+        action='store_true',
+        help='Measure time per phase and per file, throughput and peak memory; print a summary and save it as <report name>_profile.json'
+    )
+    
     args = parser.parse_args()
     
     # Validate input directory
@@ -79,54 +103,90 @@ Examples:
     print()
     
     # ============================================================
-    # PASS 1: Build Inheritance Graph
+    # Phase 1: Single-Parse Analysis
     # ============================================================
-    print(f"{C.BLUE}Phase 1: Building inheritance graph...{C.END}")
+    # Ogni file viene parsato una sola volta: lo stesso albero alimenta sia il
+    # grafo di ereditarietà sia il visitor delle metriche.
+    print(f"{C.BLUE}Phase 1: Parsing files, building inheritance graph and calculating metrics...{C.END}")
+    profiler = Profiler(args.profile)
+    profiler.phase('Phase 1: parsing and metrics')
     graph_builder = InheritanceGraphBuilder()
-    graph_builder.build_graph_from_directory(str(input_path))
+    classes_by_name = {}
+    # Un solo processo con l'engine predefinito (--jobs ed --engine sono opzioni di main_opt.py)
+    engine, jobs = DEFAULT_ENGINE, 1
+    
+    session = None
+    if args.incremental:
+        # Solo i file nuovi o modificati dall'ultima esecuzione vengono parsati
+        from astra.incremental import IncrementalSession
+        session = IncrementalSession(input_path, args.cache_dir, engine)
+        changes = session.detect_changes()
+        java_files = changes.to_parse
+        num_files = len(session.manifest)
+        print(f"  Incremental ({changes.source}): {len(changes.added)} added, {len(changes.modified)} modified, "
+              f"{len(changes.deleted)} deleted, {changes.unchanged} unchanged")
+    else:
+        java_files = [str(f) for f in input_path.rglob('*.java')]
+        num_files = len(java_files)
+    print(f"  Analyzing {len(java_files)} Java files...")
+    
+    ll_fallbacks = 0
+    fresh_results = []
+    for result in analyze_java_files(java_files, jobs, args.two_stage, engine=engine, profile=args.profile):
+        profiler.add_file(result)
+        if result.error:
+            print(f"Error processing {result.file_path}: {result.error}")
+        ll_fallbacks += result.ll_fallback
+        if session is not None:
+            fresh_results.append(result)
+        else:
+            merge_result(result, graph_builder, classes_by_name)
+    if session is not None:
+        session.merge(fresh_results, graph_builder, classes_by_name)
     
     inheritance_graph = graph_builder.get_graph()
-    class_files = {name: graph_builder.get_class_file(name) 
-                   for name in graph_builder.all_classes}
-    
     print(f"  {C.GREEN}Found {len(inheritance_graph)} classes{C.END}")
     print(f"  {C.GREEN}Inheritance relationships: {sum(1 for p in inheritance_graph.values() if p is not None)}{C.END}")
+    if args.two_stage:
+        print(f"  {C.GREEN}Two-stage parse: {ll_fallbacks}/{len(java_files)} files needed the LL fallback{C.END}")
     print()
     
     # ============================================================
-    # PASS 2: Calculate Metrics
+    # Phase 2: Global Metrics (DIT, NOC)
     # ============================================================
-    print(f"{C.BLUE}Phase 2: Calculating metrics...{C.END}")
-    metrics_visitor = MetricsVisitor(inheritance_graph, class_files)
-    
-    # Analyze all Java files
-    java_files = list(input_path.rglob('*.java'))
-    num_files = len(java_files)
-    
-    # FIX: Rimosso len() superfluo che causava crash
-    print(f"  Analyzing {num_files} Java files...")
-    
-    for java_file in java_files:
-        metrics_visitor.analyze_file(str(java_file))
-    
-    # Get results
-    classes = list(metrics_visitor.get_results().values())
+    print(f"{C.BLUE}Phase 2: Resolving global metrics (DIT, NOC)...{C.END}")
+    profiler.phase('Phase 2: DIT/NOC and store')
+    classes = list(classes_by_name.values())
+    
+    if session is not None:
+        # Solo i sottoalberi toccati da archi `extends` cambiati vengono ricalcolati
+        recomputed = session.resolve_dit_noc(graph_builder, classes_by_name)
+        session.save()
+        print(f"  {C.GREEN}DIT/NOC recomputed for {recomputed} classes{C.END}")
+    else:
+        # Calculate DIT and NOC for all classes at once on the complete graph
+        all_dit = graph_builder.all_dit()
+        all_noc = graph_builder.all_noc()
+        for class_metrics in classes:
+            class_metrics.dit = all_dit.get(class_metrics.class_name, 0)
+            class_metrics.noc = all_noc.get(class_metrics.class_name, 0)
     
-    # Calculate DIT and NOC for each class
-    for class_metrics in classes:
-        class_metrics.dit = graph_builder.calculate_dit(class_metrics.class_name)
-        class_metrics.noc = graph_builder.calculate_noc(class_metrics.class_name)
+    # Vista colonnare: riepiloghi, grafici e ordinamenti del report lavorano su questa
+    from astra.metrics_store import MetricsStore
+    store = MetricsStore(classes)
     
     print(f"  {C.GREEN}Analyzed {len(classes)} classes{C.END}")
-    print(f"  {C.GREEN}Total methods: {sum(len(c.methods) for c in classes)}{C.END}")
+    print(f"  {C.GREEN}Total methods: {store.total_methods}{C.END}")
     print()
     
     # ============================================================
     # Phase 3: Generate Visualizations
     # ============================================================
     print(f"{C.BLUE}Phase 3: Generating visualizations...{C.END}")
+    profiler.phase('Phase 3: charts')
+    from astra.chart_generator import ChartGenerator  # matplotlib solo da qui in poi
     chart_generator = ChartGenerator()
-    charts = chart_generator.generate_all_charts(classes)
+    charts = chart_generator.generate_all_charts(store)
     print(f"  {C.GREEN}Generated {len(charts)} charts{C.END}")
     print()
     
@@ -134,9 +194,12 @@ Examples:
     # Phase 4: Generate Report
     # ============================================================
     print(f"{C.BLUE}Phase 4: Generating HTML report...{C.END}")
+    profiler.phase('Phase 4: report')
     
     # FIX: Chiamata statica diretta, rimosso report_generator = ReportGenerator() inutile
-    ReportGenerator.generate_html_report(classes, charts, str(final_output_path), num_files)
+    from astra.report_generator import ReportGenerator
+    ReportGenerator.generate_html_report(classes, charts, str(final_output_path), num_files, store)
+    profiler.end_phase()
     
     print(f"  {C.GREEN}Report saved to: {final_output_path}{C.END}")
     print()
@@ -148,19 +211,25 @@ Examples:
     print(f"{C.HEADER}Analysis Complete!{C.END}")
     print(f"{C.HEADER}{'=' * 60}{C.END}")
     print(f"{C.BLUE}Total Classes: {len(classes)}{C.END}")
-    print(f"{C.BLUE}Total Methods: {sum(len(c.methods) for c in classes)}{C.END}")
+    print(f"{C.BLUE}Total Methods: {store.total_methods}{C.END}")
     
     if classes:
-        avg_mi = sum(c.maintainability_index for c in classes) / len(classes)
-        green = sum(1 for c in classes if c.maintainability_index > 85)
-        yellow = sum(1 for c in classes if 65 <= c.maintainability_index <= 85)
-        red = sum(1 for c in classes if c.maintainability_index < 65)
+        green, yellow, red = store.mi_buckets()
         
-        print(f"{C.BLUE}Average MI: {avg_mi:.2f}{C.END}")
+        print(f"{C.BLUE}Average MI: {store.avg_mi:.2f}{C.END}")
         print(f"{C.BLUE}Maintainability: {C.GREEN}Green={green}{C.END}, {C.WARN}Yellow={yellow}{C.END}, {C.FAIL}Red={red}{C.END}")
     
     print(f"\n{C.GREEN}Open '{final_output_path}' in your browser to view the full report.{C.END}")
     print(f"{C.HEADER}{'=' * 60}{C.END}")
+    
+    if args.profile:
+        summary = profiler.summary({'engine': engine, 'jobs': jobs, 'two_stage': args.two_stage,
+                                    'incremental': args.incremental, 'classes': len(classes), 'methods': store.total_methods})
+        print()
+        Profiler.print_summary(summary)
+        profile_path = final_output_path.with_name(f"{final_output_path.stem}_profile.json")
+        Profiler.write_json(summary, str(profile_path))
+        print(f"\n{C.GREEN}Profile saved to: {profile_path}{C.END}")
 
 
 if __name__ == '__main__':
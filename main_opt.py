@@ -6,16 +6,16 @@ Implements a true "Single-Parse + Post-Processing" architecture.
 import sys
 import argparse
 from pathlib import Path
-from antlr4 import FileStream, CommonTokenStream
 
-# Importa i moduli generati e custom
-from grammar.Java20Lexer import Java20Lexer
-from grammar.Java20Parser import Java20Parser
+# Importa i moduli custom
+# Solo ciò che serve all'analisi: grafici, report e modalità opzionali si importano nelle
+# rispettive fasi, e la grammatica generata solo quando un file va davvero parsato
 from astra.graph_builder import InheritanceGraphBuilder
-from astra.metrics_visitor import MetricsVisitor
-from astra.chart_generator import ChartGenerator
-from astra.report_generator import ReportGenerator
-from astra.constants import C, DEFAULT_OUTPUT_DIR
+from astra.pipeline import ENGINES, DEFAULT_ENGINE, analyze_java_files, merge_result, resolve_jobs
+from astra.cache import ResultCache, DEFAULT_CACHE_DIR, DEFAULT_CACHE_SIZE_MB
+from astra.constants import (C, DEFAULT_OUTPUT_DIR, CHART_FORMATS, DEFAULT_CHART_FORMAT,
+                             REPORT_LAYOUTS, DEFAULT_REPORT_LAYOUT)
+from astra.profiling import Profiler, DEFAULT_SLOWEST_FILES
 
 def main():
     """Main entry point for ASTra"""
@@ -43,6 +43,92 @@ def main():
         help='Output HTML report filename (default: astra_report.html). Reports are saved in the output/ directory.'
     )
     
+    parser.add_argument(
+        '--jobs', '-j',
+        type=int,
+        default=1,
+        help='Number of worker processes for parsing and analysis (default: 1, 0 = one per CPU core)'
+    )
+    
+    parser.add_argument(
+        '--two-stage',
+        action='store_true',
+        help='Parse with fast SLL prediction first and re-parse with full LL only when it fails'
+    )
+    
+    parser.add_argument(
+        '--engine',
+        choices=ENGINES,
+        default=DEFAULT_ENGINE,
+        help='visitor: build the parse tree and walk it; listener: collect metrics from parser events without building a tree (same results, lower memory); lexer: tokens only, fast but approximate'
+    )
+    
+    parser.add_argument(
+        '--no-cache',
+        action='store_true',
+        help='Disable the per-file result cache and re-parse every file'
+    )
+    
+    parser.add_argument(
+        '--cache-dir',
+        type=str,
+        default=DEFAULT_CACHE_DIR,
+        help=f'Directory of the per-file result cache (default: {DEFAULT_CACHE_DIR})'
+    )
+    
+    parser.add_argument(
+        '--cache-size',
+        type=int,
+        default=DEFAULT_CACHE_SIZE_MB,
+        help=f'Maximum cache size in MB; least recently used entries are evicted (default: {DEFAULT_CACHE_SIZE_MB})'
+    )
+    
+    parser.add_argument(
+        '--incremental',
+        action='store_true',
+        help='Re-parse only files added or modified since the last run (state is kept in the cache directory)'
+    )
+    
+    parser.add_argument(
+        '--streaming',
+        action='store_true',
+        help='Bounded-memory mode for very large projects: keep only running totals and the top classes in memory and spill per-class details to a temporary file'
+    )
+    
+    parser.add_argument(
+        '--report-layout',
+        choices=REPORT_LAYOUTS,
+        default=DEFAULT_REPORT_LAYOUT,
+        help='accordion: every class and method table in the HTML (default); virtual: metrics embedded once as JSON and rendered by the browser with virtual scrolling, lazy details, sorting and filtering; paged: an index page plus one page per package, written in parallel and skipped when unchanged (for very large projects)'
+    )
+    
+    parser.add_argument(
+        '--chart-format',
+        choices=CHART_FORMATS,
+        default=DEFAULT_CHART_FORMAT,
+        help='png: 100-dpi images embedded as base64 (default); svg: inline vector charts, smaller and sharp, large scatter plots are decimated'
+    )
+    
+    parser.add_argument(
+        '--profile',
+        action='store_true',
+        help='Measure wall and CPU time per phase and per file (lex, parse, visit, loc, finalize), throughput and peak memory; print a summary and write it as JSON'
+    )
+    
+    parser.add_argument(
+        '--profile-json',
+        type=str,
+        default=None,
+        help='Where --profile writes its JSON (default: <report name>_profile.json next to the report)'
+    )
+    
+    parser.add_argument(
+        '--profile-top',
+        type=int,
+        default=DEFAULT_SLOWEST_FILES,
+        help=f'Number of slowest files listed by --profile (default: {DEFAULT_SLOWEST_FILES})'
+    )
+    
     args = parser.parse_args()
     
     # Validate input directory
@@ -55,6 +141,16 @@ def main():
         print(f"Error: '{args.input_dir}' is not a directory.")
         sys.exit(1)
     
+    if args.streaming and args.incremental:
+        # Lo stato incrementale conserva tutti i risultati per file: l'opposto dello streaming
+        print("Error: --streaming cannot be combined with --incremental.")
+        sys.exit(1)
+    
+    if args.streaming and args.report_layout == 'paged':
+        # Le pagine si raggruppano per package: servirebbero tutti i record in memoria
+        print("Error: --streaming cannot be combined with --report-layout paged.")
+        sys.exit(1)
+    
     # Ensure output directory exists
     output_dir = Path(DEFAULT_OUTPUT_DIR)
     output_dir.mkdir(exist_ok=True)
@@ -82,58 +178,124 @@ def main():
     # FASE 1: Parsing e Raccolta Dati (Single Pass Reale)
     # ============================================================
     print(f"\n{C.BLUE}Phase 1: Parsing all files and collecting data (Single Pass)...{C.END}")
+    profiler = Profiler(args.profile, args.profile_top)
+    profiler.phase('Phase 1: parsing and metrics')
     
     graph_builder = InheritanceGraphBuilder()
-    # Il visitor ha bisogno di una referenza al grafo, che si popolerà man mano
-    metrics_visitor = MetricsVisitor(graph_builder.get_graph(), {})
+    classes_by_name = {}
+    # In modalità streaming i ClassMetrics non restano in memoria: solo totali, top-K e file di spill
+    aggregate = None
+    if args.streaming:
+        from astra.streaming import StreamingAggregate
+        aggregate = StreamingAggregate()
     
-    java_files = list(input_path.rglob('*.java'))
-    num_files = len(java_files)
-    print(f"  Found {num_files} Java files to analyze...")
+    session = None
+    if args.incremental:
+        # Solo i file nuovi o modificati dall'ultima esecuzione vengono parsati
+        from astra.incremental import IncrementalSession
+        session = IncrementalSession(input_path, args.cache_dir, args.engine)
+        changes = session.detect_changes()
+        java_files = changes.to_parse
+        num_files = len(session.manifest)
+        print(f"  Incremental ({changes.source}): {len(changes.added)} added, {len(changes.modified)} modified, "
+              f"{len(changes.deleted)} deleted, {changes.unchanged} unchanged")
+    else:
+        java_files = [str(f) for f in input_path.rglob('*.java')]
+        num_files = len(java_files)
+    jobs = resolve_jobs(args.jobs)
+    print(f"  Found {len(java_files)} Java files to analyze ({jobs} worker{'s' if jobs > 1 else ''})...")
 
     # --- CICLO UNICO SUI FILE ---
-    for java_file in java_files:
-        try:
-            # 1. Parsing centralizzato: avviene UNA SOLA VOLTA qui.
-            input_stream = FileStream(str(java_file), encoding='utf-8')
-            lexer = Java20Lexer(input_stream)
-            stream = CommonTokenStream(lexer)
-            parser = Java20Parser(stream)
-            tree = parser.compilationUnit()
-            
-            # 2. Passiamo l'albero già fatto ai due moduli
-            graph_builder.build_graph_from_tree(tree, str(java_file))
-            metrics_visitor.analyze_tree(tree, str(java_file))
-            
-        except Exception as e:
-            print(f"{C.FAIL}  Error processing {java_file}: {e}{C.END}")
+    # Ogni file viene parsato UNA SOLA VOLTA (eventualmente in un worker separato);
+    # i risultati compatti vengono uniti in ordine prima del post-processing globale.
+    cache = None if args.no_cache else ResultCache(args.cache_dir, args.cache_size * 1024 * 1024)
+    ll_fallbacks = 0
+    fresh_results = []
+    for result in analyze_java_files(java_files, jobs, args.two_stage, cache, args.engine, args.profile):
+        profiler.add_file(result)
+        if result.error:
+            print(f"{C.FAIL}  Error processing {result.file_path}: {result.error}{C.END}")
+        ll_fallbacks += result.ll_fallback
+        if session is not None:
+            fresh_results.append(result)
+        elif aggregate is not None:
+            aggregate.add_result(result, graph_builder)
+        else:
+            merge_result(result, graph_builder, classes_by_name)
+    if session is not None:
+        session.merge(fresh_results, graph_builder, classes_by_name)
 
     print(f"  {C.GREEN}Parsing and local metric calculation complete.{C.END}")
+    if cache is not None:
+        print(f"  {C.GREEN}Cache: {cache.hits} hits, {len(java_files) - cache.hits} files parsed{C.END}")
+    if args.two_stage:
+        print(f"  {C.GREEN}Two-stage parse: {ll_fallbacks}/{len(java_files)} files needed the LL fallback{C.END}")
     print()
 
     # ============================================================
     # FASE 2: Post-Processing e Finalizzazione Metriche
     # ============================================================
     print(f"{C.BLUE}Phase 2: Finalizing global metrics (DIT, NOC)...{C.END}")
+    profiler.phase('Phase 2: DIT/NOC and store')
     
-    classes = list(metrics_visitor.get_results().values())
+    classes = list(classes_by_name.values())
     
-    # Calcoliamo DIT e NOC usando il grafo completo
-    for class_metrics in classes:
-        class_metrics.dit = graph_builder.calculate_dit(class_metrics.class_name)
-        class_metrics.noc = graph_builder.calculate_noc(class_metrics.class_name)
+    if aggregate is not None:
+        # DIT/NOC solo per le classi conservate; i dettagli li ricevono mentre vengono scritti
+        aggregate.finalize(graph_builder)
+    elif session is not None:
+        # Solo i sottoalberi toccati da archi `extends` cambiati vengono ricalcolati
+        recomputed = session.resolve_dit_noc(graph_builder, classes_by_name)
+        session.save()
+        print(f"  {C.GREEN}DIT/NOC recomputed for {recomputed} classes{C.END}")
+    else:
+        # Calcoliamo DIT e NOC di tutte le classi in un'unica passata sul grafo completo
+        all_dit = graph_builder.all_dit()
+        all_noc = graph_builder.all_noc()
+        for class_metrics in classes:
+            class_metrics.dit = all_dit.get(class_metrics.class_name, 0)
+            class_metrics.noc = all_noc.get(class_metrics.class_name, 0)
     
-    print(f"  {C.GREEN}Analyzed {len(classes)} classes with {sum(len(c.methods) for c in classes)} methods.{C.END}")
+    store = None
+    if aggregate is not None:
+        num_classes, num_methods = aggregate.num_classes, aggregate.num_methods
+    else:
+        # Vista colonnare: riepiloghi, grafici e ordinamenti del report lavorano su questa
+        from astra.metrics_store import MetricsStore
+        store = MetricsStore(classes)
+        num_classes, num_methods = len(store), store.total_methods
+    print(f"  {C.GREEN}Analyzed {num_classes} classes with {num_methods} methods.{C.END}")
     print()
 
     # ============================================================
     # Fasi 3 & 4 
     # ============================================================
     print(f"{C.BLUE}Phase 3: Generating visualizations...{C.END}")
-    charts = ChartGenerator.generate_all_charts(classes)
+    profiler.phase('Phase 3: charts')
+    from astra.chart_generator import ChartCache, ChartGenerator  # matplotlib solo da qui in poi
+    # Grafici disegnati in parallelo; quelli con gli stessi dati dell'ultima esecuzione arrivano dalla cache
+    chart_cache = None if args.no_cache else ChartCache(args.cache_dir)
+    chart_timings = {}
+    if aggregate is not None:
+        charts = ChartGenerator.generate_aggregate_charts(aggregate, args.chart_format, chart_cache, chart_timings)
+    else:
+        charts = ChartGenerator.generate_all_charts(store, args.chart_format, chart_cache, chart_timings)
+    for chart_name, (seconds, cached) in chart_timings.items():
+        print(f"  {C.GREEN}{chart_name}: {seconds:.2f}s{' (cached)' if cached else ''}{C.END}")
     
     print(f"{C.BLUE}Phase 4: Generating HTML report...{C.END}")
-    ReportGenerator.generate_html_report(classes, charts, str(final_output_path), num_files)
+    profiler.phase('Phase 4: report')
+    from astra.report_generator import ReportGenerator
+    if aggregate is not None:
+        ReportGenerator.generate_streaming_report(aggregate, charts, str(final_output_path), num_files,
+                                                  args.report_layout)
+        aggregate.close()
+    else:
+        pages = ReportGenerator.generate_html_report(classes, charts, str(final_output_path), num_files, store,
+                                                     args.report_layout, jobs)
+        if pages is not None:
+            print(f"  {C.GREEN}Package pages: {pages[0]} written, {pages[1]} unchanged{C.END}")
+    profiler.end_phase()
     
     print(f"\n{C.GREEN}Success! Report saved to: {final_output_path}{C.END}")
     
@@ -143,20 +305,34 @@ def main():
     print(f"{C.HEADER}{'=' * 60}{C.END}")
     print(f"{C.HEADER}Analysis Complete!{C.END}")
     print(f"{C.HEADER}{'=' * 60}{C.END}")
-    print(f"{C.BLUE}Total Classes: {len(classes)}{C.END}")
-    print(f"{C.BLUE}Total Methods: {sum(len(c.methods) for c in classes)}{C.END}")
-    
-    if classes:
-        avg_mi = sum(c.maintainability_index for c in classes) / len(classes)
-        green = sum(1 for c in classes if c.maintainability_index > 85)
-        yellow = sum(1 for c in classes if 65 <= c.maintainability_index <= 85)
-        red = sum(1 for c in classes if c.maintainability_index < 65)
-        
+    print(f"{C.BLUE}Total Classes: {num_classes}{C.END}")
+    print(f"{C.BLUE}Total Methods: {num_methods}{C.END}")
+    
+    if aggregate is not None and num_classes:
+        avg_mi = aggregate.avg_mi
+        green, yellow, red = aggregate.mi_buckets
+    elif num_classes:
+        avg_mi = store.avg_mi
+        green, yellow, red = store.mi_buckets()
+    
+    if num_classes:
         print(f"{C.BLUE}Average MI: {avg_mi:.2f}{C.END}")
         print(f"{C.BLUE}Maintainability: {C.GREEN}Green={green}{C.END}, {C.WARN}Yellow={yellow}{C.END}, {C.FAIL}Red={red}{C.END}")
     
     print(f"\n{C.GREEN}Open '{final_output_path}' in your browser to view the full report.{C.END}")
     print(f"{C.HEADER}{'=' * 60}{C.END}")
+    
+    if args.profile:
+        summary = profiler.summary({'engine': args.engine, 'jobs': jobs, 'two_stage': args.two_stage,
+                                    'cache': cache is not None, 'incremental': args.incremental,
+                                    'streaming': args.streaming, 'report_layout': args.report_layout,
+                                    'chart_format': args.chart_format, 'classes': num_classes, 'methods': num_methods})
+        print()
+        Profiler.print_summary(summary)
+        profile_path = Path(args.profile_json) if args.profile_json else \
+            final_output_path.with_name(f"{final_output_path.stem}_profile.json")
+        Profiler.write_json(summary, str(profile_path))
+        print(f"\n{C.GREEN}Profile saved to: {profile_path}{C.END}")
 
 if __name__ == '__main__':
     main()
\ No newline at end of file
@@ -0,0 +1,5 @@
+"""
+ASTra - Test Suite
+Equivalence checks between optimized code paths and their reference
+implementations. Run from the project root with: python -m unittest -v
+"""
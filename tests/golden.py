@@ -0,0 +1,120 @@
+"""
+Golden metrics of examples/, as the code before the optimizations computed them.
+
+tests/data/examples_metrics.json holds every class and method metric of
+examples/ produced by the original two-pass main.py; test_golden compares the
+current pipeline against it. Regenerate it (only for an intended metric change,
+or after editing examples/) from the project root, with the parser generated:
+
+    python -m tests.golden [--rev <commit>]
+
+The commit (default: the first one of the history) is checked out in a
+temporary git worktree, the generated parser is copied into it and its own
+analysis code runs in a separate process.
+"""
+
+import argparse
+import json
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+from pathlib import Path
+
+PROJECT_DIR = Path(__file__).resolve().parent.parent
+GOLDEN_PATH = Path(__file__).resolve().parent / 'data' / 'examples_metrics.json'
+# File generati da antlr4 in grammar/ (non versionati)
+GENERATED_PARSER = ('Java20*.py', 'Java20*.interp', 'Java20*.tokens')
+
+
+def metrics_snapshot(classes, root) -> dict:
+    """Every metric of the classes as plain JSON values, keyed by class name (files relative to root)"""
+    root = Path(root).resolve()
+
+    def method_entry(method):
+        return {'cc': method.cyclomatic_complexity, 'loc': method.loc, 'start_line': method.start_line,
+                'end_line': method.end_line, 'halstead': method.halstead}
+
+    return {
+        c.class_name: {
+            'file': Path(c.file_path).resolve().relative_to(root).as_posix(),
+            'loc': c.loc, 'start_line': c.start_line, 'end_line': c.end_line,
+            'wmc': c.wmc, 'dit': c.dit, 'noc': c.noc, 'cbo': c.cbo,
+            'mi': c.maintainability_index, 'halstead': c.aggregated_halstead,
+            'external_types': sorted(c.external_types),
+            'methods': {name: method_entry(m) for name, m in sorted(c.methods.items())},
+        }
+        for c in sorted(classes, key=lambda c: c.class_name)
+    }
+
+
+def _two_pass_snapshot(input_dir: str) -> dict:
+    """The original main.py analysis; runs inside the checked-out commit"""
+    from astra.graph_builder import InheritanceGraphBuilder
+    from astra.metrics_visitor import MetricsVisitor
+
+    graph_builder = InheritanceGraphBuilder()
+    graph_builder.build_graph_from_directory(input_dir)
+    class_files = {name: graph_builder.get_class_file(name) for name in graph_builder.all_classes}
+    metrics_visitor = MetricsVisitor(graph_builder.get_graph(), class_files)
+    for java_file in Path(input_dir).rglob('*.java'):
+        metrics_visitor.analyze_file(str(java_file))
+
+    classes = list(metrics_visitor.get_results().values())
+    for class_metrics in classes:
+        class_metrics.dit = graph_builder.calculate_dit(class_metrics.class_name)
+        class_metrics.noc = graph_builder.calculate_noc(class_metrics.class_name)
+    return metrics_snapshot(classes, input_dir)
+
+
+def _git(*args) -> str:
+    return subprocess.run(['git', '-C', str(PROJECT_DIR), *args], capture_output=True, text=True,
+                          check=True).stdout
+
+
+def generate(rev: str) -> dict:
+    """Snapshot of examples/ computed by the code of commit rev"""
+    generated = [f for pattern in GENERATED_PARSER for f in (PROJECT_DIR / 'grammar').glob(pattern)]
+    if not generated:
+        raise FileNotFoundError("generated parser not found in grammar/ (see README, \"Generate the parser\")")
+
+    with tempfile.TemporaryDirectory(prefix='astra_golden_') as tmp:
+        tree = Path(tmp) / 'tree'
+        _git('worktree', 'add', '--detach', str(tree), rev)
+        try:
+            for parser_file in generated:
+                shutil.copy2(parser_file, tree / 'grammar' / parser_file.name)
+            # Processo separato: i moduli astra importati sono quelli del commit
+            env = dict(os.environ, PYTHONPATH=str(tree))
+            completed = subprocess.run([sys.executable, str(Path(__file__).resolve()), '--dump', str(tree / 'examples')],
+                                       cwd=tree, env=env, capture_output=True, text=True)
+            if completed.returncode != 0:
+                raise RuntimeError(f"analysis at {rev} failed:\n{completed.stderr}")
+            return json.loads(completed.stdout)
+        finally:
+            _git('worktree', 'remove', '--force', str(tree))
+
+
+def main():
+    parser = argparse.ArgumentParser(description='Regenerate the golden metrics of examples/ from an earlier commit')
+    parser.add_argument('--rev', type=str, default=None,
+                        help='Commit whose analysis is the reference (default: the first commit of the history)')
+    parser.add_argument('--dump', type=str, default=None, help=argparse.SUPPRESS)  # uso interno, nel worktree
+    args = parser.parse_args()
+
+    if args.dump:
+        json.dump(_two_pass_snapshot(args.dump), sys.stdout)
+        return
+
+    rev = args.rev or _git('rev-list', '--max-parents=0', 'HEAD').split()[0]
+    snapshot = generate(rev)
+    GOLDEN_PATH.parent.mkdir(exist_ok=True)
+    with open(GOLDEN_PATH, 'w', encoding='utf-8') as f:
+        json.dump(snapshot, f, indent=1, sort_keys=True)
+        f.write('\n')
+    print(f"{len(snapshot)} classes from {rev} written to {GOLDEN_PATH.relative_to(PROJECT_DIR)}")
+
+
+if __name__ == '__main__':
+    main()
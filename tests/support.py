@@ -0,0 +1,362 @@
+"""
+Shared helpers of the test suite: corpora, result signatures and skip markers.
+"""
+
+import random
+import re
+import sys
+import unittest
+from collections import Counter
+from pathlib import Path
+
+PROJECT_DIR = Path(__file__).resolve().parent.parent
+EXAMPLES_DIR = PROJECT_DIR / 'examples'
+# Moduli che la sola importazione della CLI non deve caricare
+DEFERRED_MODULES = ('numpy', 'matplotlib', 'astra.report_generator', 'Java20Parser', 'grammar.Java20Parser')
+
+
+def _grammar_available() -> bool:
+    try:
+        from astra.parsing import load_grammar
+        load_grammar()
+    except ImportError:
+        return False
+    return True
+
+
+# I test che parsano Java richiedono il parser generato (vedi README, "Generate the parser")
+requires_grammar = unittest.skipUnless(_grammar_available(), 'generated Java20 lexer/parser not found')
+
+
+def example_files():
+    """The .java files of examples/, in a stable order"""
+    return sorted(str(f) for f in EXAMPLES_DIR.rglob('*.java'))
+
+
+# Espressioni profonde generate con `depth` termini (vedi test_stress e benchmark.py stress)
+STRESS_SHAPES = {
+    # Concatenazione lunga: albero additiveExpression profondo `depth` livelli
+    'concatenation': lambda depth: 'String build() { return "s0"' + ''.join(f' + "s{i}"' for i in range(1, depth)) + '; }',
+    # Operatori misti: la ricorsione sinistra di ANTLR annida un contesto per operatore
+    'arithmetic': lambda depth: 'int eval(int x) { return x' + ''.join(f" {'+-'[i % 2]} x * {i}" for i in range(1, depth)) + '; }',
+    # Catena di builder: primaryNoNewArray/pNNA è ricorsiva a destra anche nel parser
+    'builder chain': lambda depth: 'String build() { return new StringBuilder()' + ''.join(f'.append({i})' for i in range(depth)) + '.toString(); }',
+}
+
+
+# Forme che il parser stesso costruisce ricorsivamente (pNNA: un frame Python per anello della catena):
+# un RecursionError del parser è ammesso solo per queste
+PARSER_RECURSIVE_SHAPES = {'builder chain'}
+
+
+def stress_source(shape: str, depth: int) -> str:
+    return f"class Deep {{\n    {STRESS_SHAPES[shape](depth)}\n}}\n"
+
+
+def tree_depth(tree) -> int:
+    """Depth of a parse tree, measured without recursion"""
+    deepest = 0
+    stack = [(tree, 1)]
+    while stack:
+        node, depth = stack.pop()
+        deepest = max(deepest, depth)
+        stack.extend((child, depth + 1) for child in getattr(node, 'children', None) or ())
+    return deepest
+
+
+# --- FIRME DEI RISULTATI ---
+
+def class_signature(class_metrics):
+    """Everything the report shows about a class (DIT/NOC aside, they are global)"""
+    methods = {name: (m.cyclomatic_complexity, m.loc, m.start_line, m.end_line, m.halstead)
+               for name, m in class_metrics.methods.items()}
+    return (class_metrics.loc, class_metrics.start_line, class_metrics.end_line,
+            sorted(class_metrics.external_types), class_metrics.wmc, class_metrics.cbo,
+            class_metrics.maintainability_index, class_metrics.aggregated_halstead, methods)
+
+
+def result_signature(result):
+    """Extends edges and class signatures of a FileResult"""
+    return result.extends, {name: class_signature(cm) for name, cm in result.classes.items()}
+
+
+# --- DATI CASUALI RIPRODUCIBILI ---
+
+def random_counts(size: int, seed: int):
+    """Halstead base counts (n1, n2, N1, N2) covering zeros, typical methods and very large classes"""
+    rnd = random.Random(seed)
+    rows = []
+    for _ in range(size):
+        scale = rnd.choice((0, 10, 100, 10000, 10 ** 7))
+        n1, n2 = rnd.randint(0, scale), rnd.randint(0, scale)
+        rows.append((n1, n2, n1 + rnd.randint(0, 4 * scale), n2 + rnd.randint(0, 4 * scale)))
+    return rows
+
+
+def random_method_classes(num_classes: int, seed: int):
+    """ClassMetrics with methods and token counters, for the class-level finalization"""
+    from astra.model import ClassMetrics, MethodMetrics
+    rnd = random.Random(seed)
+    vocabulary = [f"t{i}" for i in range(200)]
+    classes = []
+    for n in range(num_classes):
+        class_metrics = ClassMetrics(f"C{n}", "Random.java")
+        class_metrics.loc = rnd.randint(-1, 2000)
+        class_metrics.external_types = {f"T{i}" for i in range(rnd.randint(0, 8))}
+        for m in range(rnd.randint(0, 6)):
+            method = MethodMetrics(f"m{m}", class_metrics.class_name)
+            method.cyclomatic_complexity = rnd.randint(1, 30)
+            method.operators = Counter(rnd.choices(vocabulary[:40], k=rnd.randint(0, 300)))
+            method.operands = Counter(rnd.choices(vocabulary, k=rnd.randint(0, 300)))
+            class_metrics.add_method(method)
+        classes.append(class_metrics)
+    return classes
+
+
+def random_classes(num_classes: int, seed: int = 42):
+    """In-memory ClassMetrics with plausible, reproducible values (no parsing involved)"""
+    from astra.model import ClassMetrics
+    rnd = random.Random(seed)
+    classes = []
+    for n in range(num_classes):
+        class_metrics = ClassMetrics(f"C{n}", f"File{n // 10}.java")
+        class_metrics.wmc, class_metrics.dit = rnd.randint(0, 60), rnd.randint(0, 6)
+        class_metrics.noc, class_metrics.cbo = rnd.randint(0, 4), rnd.randint(0, 15)
+        class_metrics.loc = rnd.randint(1, 900)
+        class_metrics.maintainability_index = round(rnd.uniform(20, 120), 2)
+        if rnd.random() < 0.9:
+            volume = rnd.uniform(0, 5000)
+            class_metrics.aggregated_halstead = {'V': volume, 'D': rnd.uniform(0, 40), 'E': volume * 10}
+        classes.append(class_metrics)
+    return classes
+
+
+# --- IMPLEMENTAZIONI DI RIFERIMENTO (il codice prima delle ottimizzazioni) ---
+
+def legacy_two_pass(input_dir: str):
+    """
+    The original main.py orchestration: one parse for the graph, a second one for the metrics.
+    It runs today's visitor and calculators, so it only checks the single-parse wiring;
+    the values themselves are checked against the golden snapshot (tests/golden.py).
+    """
+    from astra.graph_builder import InheritanceGraphBuilder
+    from astra.metrics_visitor import MetricsVisitor
+
+    graph_builder = InheritanceGraphBuilder()
+    graph_builder.build_graph_from_directory(input_dir)
+    class_files = {name: graph_builder.get_class_file(name) for name in graph_builder.all_classes}
+    metrics_visitor = MetricsVisitor(graph_builder.get_graph(), class_files)
+    for java_file in Path(input_dir).rglob('*.java'):
+        metrics_visitor.analyze_file(str(java_file))
+
+    classes = list(metrics_visitor.get_results().values())
+    for class_metrics in classes:
+        class_metrics.dit = graph_builder.calculate_dit(class_metrics.class_name)
+        class_metrics.noc = graph_builder.calculate_noc(class_metrics.class_name)
+    return classes
+
+
+def legacy_visit_terminal(visitor, node):
+    """The visitor terminal path before the lookup table (string membership tests per token)"""
+    from astra import tokens
+    from astra.metrics_visitor import Java20Lexer
+    if not visitor.current_method: return None
+    try:
+        token = node.getSymbol()
+        if token.type == -1: return None
+        if hasattr(Java20Lexer, 'WS') and token.type == Java20Lexer.WS: return None
+        if hasattr(Java20Lexer, 'COMMENT') and token.type == Java20Lexer.COMMENT: return None
+        if hasattr(Java20Lexer, 'LINE_COMMENT') and token.type == Java20Lexer.LINE_COMMENT: return None
+        token_text = node.getText()
+        token_name = Java20Lexer.symbolicNames[token.type]
+        if token_text in ['&&', '||', '?']: visitor._increment_complexity()
+        if tokens.is_operator(token_text):
+            visitor.current_method.operators[sys.intern(token_text)] += 1
+        elif tokens.is_operand(token_name, token_text):
+            visitor.current_method.operands[sys.intern(token_text)] += 1
+    except: pass
+    return None
+
+
+def recursive_visitor():
+    """MetricsVisitor as it traversed the tree before the dispatch table and the explicit stack"""
+    from antlr4.tree.Tree import ParseTreeVisitor
+    from astra.metrics_visitor import MethodMetrics, ClassMetrics, MetricsVisitor
+
+    class RecursiveVisitor(MetricsVisitor):
+        visit = ParseTreeVisitor.visit
+        visitChildren = ParseTreeVisitor.visitChildren
+
+        def visitNormalClassDeclaration(self, ctx):
+            tid = ctx.typeIdentifier()
+            if tid:
+                self.current_class = ClassMetrics(tid.getText(), self.current_file_path)
+                self.current_class.start_line = ctx.start.line
+                self.current_class.end_line = ctx.stop.line
+                self.classes[self.current_class.class_name] = self.current_class
+                self.current_file_classes.append(self.current_class)
+                self.visitChildren(ctx)
+                self.current_class = None
+            return None
+
+        def visitMethodDeclaration(self, ctx):
+            if not self.current_class: return None
+            method_name = "unknown"
+            header = ctx.methodHeader()
+            if header and header.methodDeclarator():
+                method_name = header.methodDeclarator().identifier().getText()
+            return self._visit_method(ctx, method_name)
+
+        def visitConstructorDeclaration(self, ctx):
+            if not self.current_class: return None
+            stn = ctx.constructorDeclarator().simpleTypeName()
+            return self._visit_method(ctx, stn.getText() if stn else "<init>")
+
+        def _visit_method(self, ctx, method_name):
+            self.current_method = MethodMetrics(method_name, self.current_class.class_name)
+            self.current_method.start_line = ctx.start.line
+            self.current_method.end_line = ctx.stop.line
+            self.visitChildren(ctx)
+            self.current_method.calculate_halstead()
+            self.current_class.add_method(self.current_method)
+            self.current_method = None
+            return None
+
+        def visitFieldDeclaration(self, ctx):
+            self._enter_field(ctx)
+            return self.visitChildren(ctx)
+
+        def visitLocalVariableDeclaration(self, ctx):
+            self._enter_local_variable(ctx)
+            return self.visitChildren(ctx)
+
+        def visitStatement(self, ctx):
+            if hasattr(ctx, 'ifThenStatement') and ctx.ifThenStatement(): self._increment_complexity()
+            elif hasattr(ctx, 'ifThenElseStatement') and ctx.ifThenElseStatement(): self._increment_complexity()
+            elif hasattr(ctx, 'whileStatement') and ctx.whileStatement(): self._increment_complexity()
+            elif hasattr(ctx, 'forStatement') and ctx.forStatement(): self._increment_complexity()
+            elif hasattr(ctx, 'doStatement') and ctx.doStatement(): self._increment_complexity()
+            elif hasattr(ctx, 'switchStatement') and ctx.switchStatement(): self._increment_complexity()
+            elif hasattr(ctx, 'tryStatement') and ctx.tryStatement(): self._increment_complexity()
+            return self.visitChildren(ctx)
+
+        def visitSwitchLabel(self, ctx):
+            self._enter_switch_label(ctx)
+            return self.visitChildren(ctx)
+
+    return RecursiveVisitor
+
+
+def scalar_class_metrics(class_metrics):
+    """(WMC, CBO, Halstead, MI) as ClassMetrics.calculate_class_metrics computed them before the batches"""
+    from astra.calculator import CKCalculator, HalsteadCalculator, MaintainabilityCalculator
+    all_operators, all_operands = Counter(), Counter()
+    complexities = []
+    for method in class_metrics.methods.values():
+        all_operators.update(method.operators)
+        all_operands.update(method.operands)
+        complexities.append(method.cyclomatic_complexity)
+    halstead = None
+    if all_operators or all_operands:
+        halstead = HalsteadCalculator.calculate(len(all_operators), len(all_operands),
+                                                sum(all_operators.values()), sum(all_operands.values()))
+    avg_cc = sum(complexities) / len(complexities) if complexities else 1
+    volume = halstead.get('V', 0.0) if halstead else 0.0
+    mi = MaintainabilityCalculator.calculate(volume, int(avg_cc), class_metrics.loc)
+    return (CKCalculator.calculate_wmc(complexities), CKCalculator.calculate_cbo(class_metrics.external_types),
+            halstead, mi)
+
+
+def python_aggregates(classes):
+    """The aggregates as main.py, ChartGenerator and ReportGenerator computed them before the store"""
+    mi_values = [c.maintainability_index for c in classes]
+    scatter = [(c.wmc, c.aggregated_halstead['V']) for c in classes
+               if c.aggregated_halstead and c.aggregated_halstead.get('V', 0) > 0 and c.wmc > 0]
+    by_name = sorted(classes, key=lambda c: c.class_name)
+    return {
+        'total_loc': sum(c.loc for c in classes),
+        'avg_mi': round(sum(mi_values) / len(classes), 6),
+        'critical': sum(1 for c in classes if c.maintainability_index < 65 or c.wmc > 20),
+        'buckets': (sum(1 for mi in mi_values if mi > 85), sum(1 for mi in mi_values if 65 <= mi <= 85),
+                    sum(1 for mi in mi_values if mi < 65)),
+        'scatter': ([x for x, _ in scatter], [y for _, y in scatter]),
+        'radar': [c.class_name for c in sorted(classes, key=lambda c: c.wmc, reverse=True)[:5]],
+        'names': [c.class_name for c in by_name],
+        'hall': [c.class_name for c in sorted(by_name, key=lambda c: (c.maintainability_index, -c.wmc))[:5]],
+    }
+
+
+# --- IMPLEMENTAZIONI ATTUALI, NELLA FORMA DEI RIFERIMENTI ---
+
+def single_parse(input_dir: str, engine: str = 'visitor'):
+    """The current main.py pipeline (main_opt.py with --engine)"""
+    from astra.graph_builder import InheritanceGraphBuilder
+    from astra.pipeline import analyze_java_files, merge_result
+
+    graph_builder = InheritanceGraphBuilder()
+    classes_by_name = {}
+    for result in analyze_java_files([str(f) for f in Path(input_dir).rglob('*.java')], engine=engine):
+        merge_result(result, graph_builder, classes_by_name)
+
+    classes = list(classes_by_name.values())
+    all_dit = graph_builder.all_dit()
+    all_noc = graph_builder.all_noc()
+    for class_metrics in classes:
+        class_metrics.dit = all_dit.get(class_metrics.class_name, 0)
+        class_metrics.noc = all_noc.get(class_metrics.class_name, 0)
+    return classes
+
+
+def store_aggregates(classes):
+    """python_aggregates() computed through the MetricsStore"""
+    from astra.metrics_store import MetricsStore
+    store = MetricsStore(classes)
+    x_values, y_values, _ = store.scatter_arrays()
+    return {
+        'total_loc': store.total_loc,
+        'avg_mi': round(store.avg_mi, 6),
+        'critical': store.critical_count,
+        'buckets': store.mi_buckets(),
+        'scatter': (x_values.tolist(), y_values.tolist()),
+        'radar': store.names[store.top_by_wmc(5)].tolist(),
+        'names': store.names[store.name_order()].tolist(),
+        'hall': store.names[store.most_critical(5)].tolist(),
+    }
+
+
+def strip_timestamp(html: str) -> str:
+    return re.sub(r'Generated: [0-9: -]+', 'Generated: <timestamp>', html)
+
+
+def render_report(classes, num_files: int, output_path: Path) -> str:
+    """Render the HTML report (without charts) and strip the generation timestamp"""
+    from astra.report_generator import ReportGenerator
+    ReportGenerator.generate_html_report(classes, {}, str(output_path), num_files)
+    return strip_timestamp(output_path.read_text(encoding='utf-8'))
+
+
+def write_report(java_files, streaming: bool, output_path: str):
+    """Analysis + DIT/NOC + HTML report (no charts) as main_opt does, in memory or with --streaming"""
+    from astra.graph_builder import InheritanceGraphBuilder
+    from astra.pipeline import analyze_java_files, merge_result
+    from astra.report_generator import ReportGenerator
+    from astra.streaming import StreamingAggregate
+
+    graph_builder = InheritanceGraphBuilder()
+    if streaming:
+        aggregate = StreamingAggregate()
+        for result in analyze_java_files(java_files):
+            aggregate.add_result(result, graph_builder)
+        aggregate.finalize(graph_builder)
+        ReportGenerator.generate_streaming_report(aggregate, {}, output_path, len(java_files))
+        aggregate.close()
+    else:
+        classes_by_name = {}
+        for result in analyze_java_files(java_files):
+            merge_result(result, graph_builder, classes_by_name)
+        classes = list(classes_by_name.values())
+        all_dit, all_noc = graph_builder.all_dit(), graph_builder.all_noc()
+        for class_metrics in classes:
+            class_metrics.dit = all_dit.get(class_metrics.class_name, 0)
+            class_metrics.noc = all_noc.get(class_metrics.class_name, 0)
+        ReportGenerator.generate_html_report(classes, {}, output_path, len(java_files))
@@ -0,0 +1,100 @@
+"""
+Result cache: a change to the code that computes a FileResult must invalidate it,
+and only its own entries count toward the size cap.
+"""
+
+import ast
+import shutil
+import tempfile
+import unittest
+from pathlib import Path
+from unittest import mock
+
+from astra import cache
+
+# Moduli importati dall'analisi che non influiscono sui risultati in cache
+NOT_IN_RESULTS = {'profiling'}  # FileResult.profile non viene mai salvato
+
+
+def _astra_imports(module: str):
+    """Names of the astra modules imported by astra/<module>.py"""
+    tree = ast.parse((cache.ASTRA_DIR / f"{module}.py").read_text(encoding='utf-8'))
+    names = set()
+    for node in ast.walk(tree):
+        if isinstance(node, ast.ImportFrom) and node.module == 'astra':
+            names.update(alias.name for alias in node.names if alias.name != '__version__')
+        elif isinstance(node, ast.ImportFrom) and (node.module or '').startswith('astra.'):
+            names.add(node.module.split('.')[1])
+        elif isinstance(node, ast.Import):
+            names.update(alias.name.split('.')[1] for alias in node.names if alias.name.startswith('astra.'))
+    return names
+
+
+class CacheSaltTest(unittest.TestCase):
+
+    def setUp(self):
+        self.addCleanup(setattr, cache, '_salt', None)
+
+    def test_analysis_modules_complete(self):
+        # Ogni modulo raggiungibile dall'analisi di un file deve entrare nel salt
+        for module in cache.ANALYSIS_MODULES:
+            missing = _astra_imports(module) - set(cache.ANALYSIS_MODULES) - NOT_IN_RESULTS
+            self.assertFalse(missing, f"{module}.py imports modules missing from ANALYSIS_MODULES: {missing}")
+
+    def test_source_change_changes_salt(self):
+        with tempfile.TemporaryDirectory(prefix='astra_test_') as tmp:
+            copy = Path(tmp) / 'astra'
+            shutil.copytree(cache.ASTRA_DIR, copy, ignore=shutil.ignore_patterns('__pycache__'))
+            with mock.patch.object(cache, 'ASTRA_DIR', copy):
+                cache._salt = None
+                before = cache.compute_salt()
+                self.assertEqual(cache.compute_salt(), before)
+                with open(copy / 'calculator.py', 'a', encoding='utf-8') as f:
+                    f.write('\n# modifica\n')
+                cache._salt = None
+                self.assertNotEqual(cache.compute_salt(), before)
+
+
+class CacheIndexTest(unittest.TestCase):
+
+    def setUp(self):
+        tmp = tempfile.TemporaryDirectory(prefix='astra_test_')
+        self.addCleanup(tmp.cleanup)
+        self.cache_dir = Path(tmp.name) / 'cache'
+        self.src = Path(tmp.name) / 'src'
+        self.src.mkdir()
+        (self.src / 'A.java').write_text('class A {}\n', encoding='utf-8')
+
+    def _put_entry(self, result_cache):
+        from astra.pipeline import FileResult
+        java_file = str(self.src / 'A.java')
+        key = result_cache.key_for(java_file)
+        result_cache.put(key, FileResult(java_file))
+        return key
+
+    def test_incremental_state_not_counted(self):
+        from astra.incremental import IncrementalSession
+        key = self._put_entry(cache.ResultCache(str(self.cache_dir)))
+        entry_size = (self.cache_dir / key[:2] / f"{key}.pkl").stat().st_size
+        # Lo stato di --incremental vive nella stessa directory della cache
+        IncrementalSession(self.src, str(self.cache_dir)).save()
+        # Stato salvato da versioni precedenti (<cache_dir>/incremental/<key>.pkl)
+        legacy = self.cache_dir / 'incremental' / '0123456789abcdef.pkl'
+        legacy.parent.mkdir(exist_ok=True)
+        legacy.write_bytes(b'\0' * 4096)
+
+        reopened = cache.ResultCache(str(self.cache_dir))
+        self.assertEqual(list(reopened._entries), [key])
+        self.assertEqual(reopened._total_bytes, entry_size)
+
+    def test_eviction_removes_entry_files(self):
+        result_cache = cache.ResultCache(str(self.cache_dir))
+        key = self._put_entry(result_cache)
+        result_cache.max_bytes = 0
+        result_cache._evict()
+        self.assertFalse((self.cache_dir / key[:2] / f"{key}.pkl").exists())
+        self.assertEqual((list(result_cache._entries), result_cache._total_bytes), ([], 0))
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,54 @@
+"""
+The vectorized Halstead/MI batches against the scalar formulas, on random inputs:
+every value must be bit-identical.
+"""
+
+import random
+import unittest
+
+from tests.support import random_counts, random_method_classes, scalar_class_metrics
+
+# Semi fissi: un errore si riproduce rilanciando il test
+SEEDS = (0, 1, 42, 2024, 31337)
+
+
+class BatchMatchesScalarTest(unittest.TestCase):
+
+    def test_halstead(self):
+        import numpy as np
+        from astra.calculator import HalsteadCalculator
+        for seed in SEEDS:
+            rows = random_counts(5000, seed)
+            columns = np.array(rows, dtype=np.int64).T
+            batch = HalsteadCalculator.batch_to_dicts(HalsteadCalculator.calculate_batch(*columns))
+            self.assertEqual(len(batch), len(rows))
+            for row, actual in zip(rows, batch):
+                self.assertEqual(actual, HalsteadCalculator.calculate(*row), f"seed {seed}, counts {row}")
+
+    def test_maintainability_index(self):
+        from astra.calculator import MaintainabilityCalculator
+        for seed in SEEDS:
+            rnd = random.Random(seed)
+            # Volumi nulli o negativi, LOC <= 0 e valori oltre i limiti di clamping inclusi
+            inputs = [(rnd.choice((0.0, -1.0, rnd.uniform(0, 10), rnd.uniform(0, 1e9))), rnd.randint(0, 60),
+                       rnd.randint(-5, 100000)) for _ in range(5000)]
+            volumes, complexities, locs = (list(column) for column in zip(*inputs))
+            batch = MaintainabilityCalculator.calculate_batch(volumes, complexities, locs).tolist()
+            for item, actual in zip(inputs, batch):
+                self.assertEqual(actual, MaintainabilityCalculator.calculate(*item), f"seed {seed}, inputs {item}")
+
+    def test_class_finalization(self):
+        from astra.model import calculate_classes_metrics
+        for seed in SEEDS:
+            classes = random_method_classes(300, seed)
+            expected = [scalar_class_metrics(c) for c in classes]
+            calculate_classes_metrics(classes)
+            for class_metrics, (wmc, cbo, halstead, mi) in zip(classes, expected):
+                msg = f"seed {seed}, class {class_metrics.class_name}"
+                self.assertEqual((class_metrics.wmc, class_metrics.cbo), (wmc, cbo), msg)
+                self.assertEqual(class_metrics.aggregated_halstead, halstead, msg)
+                self.assertEqual(class_metrics.maintainability_index, mi, msg)
+
+
+if __name__ == '__main__':
+    unittest.main()
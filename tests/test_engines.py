@@ -0,0 +1,125 @@
+"""
+The listener engine must reproduce the visitor engine, file by file.
+Every test analyzes several files in this same process, so the reused
+lexer/parser pair (see astra.parsing) goes from one file to the next.
+"""
+
+import tempfile
+import unittest
+from pathlib import Path
+from unittest import mock
+
+from tests.support import example_files, requires_grammar, result_signature
+
+# Manca un ';': lo stadio SLL con BailErrorStrategy si interrompe, lo stadio LL recupera
+MALFORMED_SOURCE = """
+class Parsed {
+    int twice(int x) {
+        int y = x * 2
+        return y;
+    }
+}
+
+class AfterTheError extends Parsed {
+    int branch(int x) {
+        if (x > 0 && x < 10) {
+            return twice(x);
+        }
+        return x;
+    }
+}
+"""
+
+
+@requires_grammar
+class ListenerMatchesVisitorTest(unittest.TestCase):
+
+    def _analyze(self, java_files, engine, two_stage=False):
+        from astra.pipeline import analyze_java_file
+        signatures = {}
+        for file_path in java_files:
+            result = analyze_java_file(file_path, two_stage=two_stage, engine=engine)
+            self.assertIsNone(result.error, f"{engine} engine failed on {file_path}")
+            self.assertTrue(result.classes, f"{engine} engine found no class in {file_path}")
+            signatures[file_path] = result_signature(result)
+        return signatures
+
+    def test_examples(self):
+        java_files = example_files()
+        self.assertGreater(len(java_files), 1)
+        self.assertEqual(self._analyze(java_files, 'visitor'), self._analyze(java_files, 'listener'))
+
+    def test_listener_runs_repeated(self):
+        # Il listener del file precedente non deve restare attaccato al parser riusato
+        java_files = example_files() * 2
+        first, second = self._analyze(java_files[:len(java_files) // 2], 'listener'), self._analyze(java_files, 'listener')
+        self.assertEqual(first, second)
+
+    def test_engines_interleaved(self):
+        # Visitor e listener alternati sullo stesso parser: buildParseTrees e listener cambiano a ogni file
+        for file_path in example_files():
+            listener = self._analyze([file_path], 'listener')
+            visitor = self._analyze([file_path], 'visitor')
+            self.assertEqual(visitor, listener, file_path)
+
+
+def _bail_midway_strategy(after_tokens: int):
+    """BailErrorStrategy that also gives up on valid input, once the parser is past after_tokens"""
+    from antlr4.error.ErrorStrategy import BailErrorStrategy
+    from antlr4.error.Errors import ParseCancellationException
+
+    class BailMidway(BailErrorStrategy):
+        def sync(self, recognizer):
+            if recognizer.getCurrentToken().tokenIndex >= after_tokens:
+                raise ParseCancellationException('forced SLL bail')
+            super().sync(recognizer)
+
+    return BailMidway
+
+
+@requires_grammar
+class TwoStageTest(unittest.TestCase):
+    """SLL -> LL fallback: the listener must be re-attached, clean, for the LL stage"""
+
+    def setUp(self):
+        tmp = tempfile.TemporaryDirectory(prefix='astra_test_')
+        self.addCleanup(tmp.cleanup)
+        self.malformed = Path(tmp.name) / 'Malformed.java'
+        self.malformed.write_text(MALFORMED_SOURCE, encoding='utf-8')
+
+    def _analyze(self, file_path, engine):
+        from astra.pipeline import analyze_java_file
+        result = analyze_java_file(str(file_path), two_stage=True, engine=engine)
+        self.assertIsNone(result.error, f"{engine} engine failed on {file_path}")
+        return result
+
+    def test_syntax_error_falls_back(self):
+        from astra.parsing import ParseStats
+        ParseStats.reset()
+        visitor, listener = self._analyze(self.malformed, 'visitor'), self._analyze(self.malformed, 'listener')
+        self.assertTrue(visitor.ll_fallback and listener.ll_fallback)
+        self.assertEqual(ParseStats.ll_fallbacks, 2)
+        self.assertEqual(set(listener.classes), {'Parsed', 'AfterTheError'})
+        self.assertEqual(result_signature(visitor), result_signature(listener))
+
+    def test_files_after_a_fallback(self):
+        # Dopo un fallback il parser riusato deve analizzare normalmente i file successivi
+        self._analyze(self.malformed, 'listener')
+        for file_path in example_files():
+            self.assertEqual(result_signature(self._analyze(file_path, 'visitor')),
+                             result_signature(self._analyze(file_path, 'listener')), file_path)
+
+    def test_forced_bail_on_valid_input(self):
+        # Il listener ha già ricevuto eventi dallo stadio SLL: devono essere scartati prima dello stadio LL
+        expected = {}
+        for file_path in example_files():
+            expected[file_path] = result_signature(self._analyze(file_path, 'visitor'))
+        with mock.patch('astra.parsing.BailErrorStrategy', _bail_midway_strategy(50)):
+            for file_path in example_files():
+                result = self._analyze(file_path, 'listener')
+                self.assertTrue(result.ll_fallback, file_path)
+                self.assertEqual(result_signature(result), expected[file_path], file_path)
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,38 @@
+"""
+The metrics of examples/ against the golden snapshot of the code before the
+optimizations (tests/data/examples_metrics.json, see tests/golden.py).
+"""
+
+import json
+import unittest
+
+from tests.golden import GOLDEN_PATH, PROJECT_DIR, metrics_snapshot
+from tests.support import EXAMPLES_DIR, requires_grammar, single_parse
+
+
+@requires_grammar
+class GoldenMetricsTest(unittest.TestCase):
+
+    @classmethod
+    def setUpClass(cls):
+        cls.golden = None
+        if GOLDEN_PATH.is_file():
+            cls.golden = json.loads(GOLDEN_PATH.read_text(encoding='utf-8'))
+
+    def assertMatchesGolden(self, classes, label):
+        if self.golden is None:
+            self.fail(f"{GOLDEN_PATH.relative_to(PROJECT_DIR)} not found: generate it with python -m tests.golden")
+        snapshot = metrics_snapshot(classes, EXAMPLES_DIR)
+        self.assertEqual(sorted(snapshot), sorted(self.golden), f"{label}: classes")
+        for name, expected in self.golden.items():
+            self.assertEqual(snapshot[name], expected, f"{label}, class {name}")
+
+    def test_visitor_engine(self):
+        self.assertMatchesGolden(single_parse(str(EXAMPLES_DIR), 'visitor'), 'visitor')
+
+    def test_listener_engine(self):
+        self.assertMatchesGolden(single_parse(str(EXAMPLES_DIR), 'listener'), 'listener')
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,87 @@
+"""
+Change detection of --incremental, walking the tree and through git.
+No Java is parsed: the sessions are fed empty FileResults.
+"""
+
+import os
+import shutil
+import subprocess
+import tempfile
+import unittest
+from pathlib import Path
+
+
+def _git(cwd, *args):
+    subprocess.run(['git', '-C', str(cwd), '-c', 'user.name=ASTra', '-c', 'user.email=astra@example.com', *args],
+                   check=True, capture_output=True)
+
+
+@unittest.skipUnless(shutil.which('git'), 'git not found')
+class GitChangeDetectionTest(unittest.TestCase):
+
+    def setUp(self):
+        tmp = tempfile.TemporaryDirectory(prefix='astra_test_')
+        self.addCleanup(tmp.cleanup)
+        self.repo = Path(tmp.name) / 'repo'
+        self.src = self.repo / 'src'
+        (self.src / 'generated').mkdir(parents=True)
+        self.state_dir = str(Path(tmp.name) / 'state')
+
+        (self.repo / '.gitignore').write_text('generated/\n', encoding='utf-8')
+        (self.src / 'Tracked.java').write_text('class Tracked {}\n', encoding='utf-8')
+        self.generated = self.src / 'generated' / 'Generated.java'
+        self.generated.write_text('class Generated {}\n', encoding='utf-8')
+        _git(self.repo, 'init', '-q')
+        _git(self.repo, 'add', '.')
+        _git(self.repo, 'commit', '-q', '-m', 'initial')
+
+    def _run(self):
+        """One incremental run: detect, record a result for every re-parsed file, save"""
+        from astra.graph_builder import InheritanceGraphBuilder
+        from astra.incremental import IncrementalSession
+        from astra.pipeline import FileResult
+        session = IncrementalSession(self.src, self.state_dir)
+        changes = session.detect_changes()
+        session.merge([FileResult(p) for p in changes.to_parse], InheritanceGraphBuilder(), {})
+        session.save()
+        return changes
+
+    def test_first_run_walks_the_tree(self):
+        changes = self._run()
+        self.assertEqual(changes.source, 'walk')
+        self.assertEqual(sorted(changes.added), sorted([str(self.src / 'Tracked.java'), str(self.generated)]))
+
+    def test_unchanged(self):
+        self._run()
+        changes = self._run()
+        self.assertEqual(changes.source, 'git')
+        self.assertEqual((changes.to_parse, changes.deleted, changes.unchanged), ([], [], 2))
+
+    def test_ignored_file_modified(self):
+        self._run()
+        self.generated.write_text('class Generated extends Tracked {}\n', encoding='utf-8')
+        changes = self._run()
+        self.assertEqual(changes.source, 'git')
+        self.assertEqual((changes.modified, changes.added, changes.deleted), ([str(self.generated)], [], []))
+        self.assertEqual(self._run().to_parse, [])
+
+    def test_ignored_file_added_and_deleted(self):
+        self._run()
+        added = self.src / 'generated' / 'Added.java'
+        added.write_text('class Added {}\n', encoding='utf-8')
+        os.remove(self.generated)
+        changes = self._run()
+        self.assertEqual(changes.source, 'git')
+        self.assertEqual((changes.added, changes.deleted), ([str(added)], [str(self.generated)]))
+
+    def test_tracked_file_committed(self):
+        self._run()
+        (self.src / 'Tracked.java').write_text('class Tracked { int x; }\n', encoding='utf-8')
+        _git(self.repo, 'commit', '-q', '-a', '-m', 'edit')
+        changes = self._run()
+        self.assertEqual(changes.source, 'git')
+        self.assertEqual(changes.modified, [str(self.src / 'Tracked.java')])
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,87 @@
+"""
+The approximate lexer-only engine against the full parse, on code outside its
+documented approximations (no anonymous/local classes, interfaces or enums).
+The drift on real code is measured by `benchmark.py drift`.
+"""
+
+import tempfile
+import unittest
+from pathlib import Path
+
+from tests.support import requires_grammar
+
+SOURCE = """
+package fixture;
+
+import java.util.List;
+
+class Base {
+    protected int value;
+
+    int value() {
+        return value;
+    }
+}
+
+class Derived extends Base {
+    private final int limit = 10;
+
+    Derived(int start) {
+        value = start;
+    }
+
+    int sum(List<Integer> items) {
+        int total = 0;
+        for (int item : items) {
+            if (item > 0 && item < limit) {
+                total += item;
+            } else if (item == 0 || item == limit) {
+                total += 1;
+            }
+        }
+        while (total > 100) {
+            total -= limit;
+        }
+        return total > 50 ? total : -total;
+    }
+
+    String label(int code) {
+        switch (code) {
+            case 1:
+                return "one";
+            case 2:
+                return "two";
+            default:
+                return "many";
+        }
+    }
+}
+"""
+
+
+@requires_grammar
+class LexerEngineTest(unittest.TestCase):
+
+    def _shape(self, result):
+        """Classes, extends edges, method names and per-method CC of a FileResult"""
+        self.assertIsNone(result.error)
+        methods = {name: {m: method.cyclomatic_complexity for m, method in cm.methods.items()}
+                   for name, cm in result.classes.items()}
+        return result.extends, methods
+
+    def test_matches_full_parse(self):
+        from astra.pipeline import analyze_java_file
+        with tempfile.TemporaryDirectory(prefix='astra_test_') as tmp:
+            file_path = Path(tmp) / 'Fixture.java'
+            file_path.write_text(SOURCE, encoding='utf-8')
+            reference = analyze_java_file(str(file_path), engine='visitor')
+            approximate = analyze_java_file(str(file_path), engine='lexer')
+
+        self.assertEqual(self._shape(approximate), self._shape(reference))
+        self.assertEqual(self._shape(reference)[1]['Derived'], {'Derived': 1, 'sum': 8, 'label': 3})
+        # CBO non è raccolto dall'engine lexer
+        self.assertTrue(all(cm.cbo == 0 for cm in approximate.classes.values()))
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,47 @@
+"""
+MetricsStore against the per-consumer Python passes it replaced, and the partial
+selection of the scatter outliers against a full sort.
+"""
+
+import unittest
+
+from tests.support import python_aggregates, random_classes, store_aggregates
+
+
+class MetricsStoreTest(unittest.TestCase):
+
+    def test_aggregates_and_orderings(self):
+        for num_classes, seed in ((1, 0), (7, 1), (1000, 2), (20000, 42)):
+            with self.subTest(classes=num_classes, seed=seed):
+                classes = random_classes(num_classes, seed)
+                self.assertEqual(store_aggregates(classes), python_aggregates(classes))
+
+    def test_top_outliers(self):
+        from astra.chart_generator import top_outliers
+        from astra.metrics_store import MetricsStore
+        for num_classes, seed in ((5, 0), (1000, 1), (20000, 42)):
+            with self.subTest(classes=num_classes, seed=seed):
+                x_values, y_values, _ = MetricsStore(random_classes(num_classes, seed)).scatter_arrays()
+                by_score = sorted(range(len(x_values)), key=lambda i: (-(x_values[i] * y_values[i]), i))
+                outliers = top_outliers(x_values, y_values).tolist()
+                self.assertTrue(outliers or not by_score)
+                self.assertEqual(outliers, by_score[:len(outliers)])
+
+    def test_top_outliers_ties(self):
+        import numpy as np
+        from astra.chart_generator import top_outliers
+        # Pochi valori interi: molti punti a pari merito attorno al k-esimo punteggio
+        for seed in (0, 1, 2, 3):
+            rnd = np.random.default_rng(seed)
+            x_values = rnd.integers(1, 4, 500).astype(np.float64)
+            y_values = rnd.integers(1, 4, 500).astype(np.float64)
+            with self.subTest(seed=seed):
+                by_score = sorted(range(len(x_values)), key=lambda i: (-(x_values[i] * y_values[i]), i))
+                for top_n in (1, 15, 100):
+                    self.assertEqual(top_outliers(x_values, y_values, top_n).tolist(), by_score[:top_n])
+        same = np.ones(40)
+        self.assertEqual(top_outliers(same, same, 15).tolist(), list(range(15)))
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,57 @@
+"""
+Whole-run equivalences: the single-parse pipeline against the legacy two-pass
+one, and the --streaming report against the in-memory one.
+"""
+
+import difflib
+import tempfile
+import unittest
+from pathlib import Path
+
+from tests.support import (EXAMPLES_DIR, legacy_two_pass, render_report, requires_grammar, single_parse,
+                           strip_timestamp, write_report)
+
+
+@requires_grammar
+class PipelineTest(unittest.TestCase):
+
+    @classmethod
+    def setUpClass(cls):
+        from astra.corpus_generator import CorpusSpec, generate_corpus
+        cls._tmp = tempfile.TemporaryDirectory(prefix='astra_test_')
+        cls.tmp = Path(cls._tmp.name)
+        # Corpus piccolo ma con catene extends fra file e pacchetti diversi
+        generate_corpus(cls.tmp / 'generated', CorpusSpec(files=30, classes_per_file=3, files_per_package=10, seed=7))
+        cls.corpora = {'examples': EXAMPLES_DIR, 'generated': cls.tmp / 'generated'}
+
+    @classmethod
+    def tearDownClass(cls):
+        cls._tmp.cleanup()
+
+    def assertSameReport(self, expected: str, actual: str, labels):
+        if expected != actual:
+            diff = difflib.unified_diff(expected.splitlines(), actual.splitlines(), *labels, lineterm='', n=1)
+            self.fail('Reports differ:\n' + '\n'.join(list(diff)[:40]))
+
+    def test_single_parse_matches_two_pass(self):
+        for name, corpus in self.corpora.items():
+            with self.subTest(corpus=name):
+                num_files = len(list(corpus.rglob('*.java')))
+                reference = render_report(legacy_two_pass(str(corpus)), num_files, self.tmp / f"{name}_two_pass.html")
+                candidate = render_report(single_parse(str(corpus)), num_files, self.tmp / f"{name}_single.html")
+                self.assertSameReport(reference, candidate, ('two_pass.html', 'single_parse.html'))
+
+    def test_streaming_matches_in_memory(self):
+        for name, corpus in self.corpora.items():
+            with self.subTest(corpus=name):
+                java_files = [str(f) for f in corpus.rglob('*.java')]
+                reports = []
+                for label, streaming in (('in-memory', False), ('streaming', True)):
+                    output_path = self.tmp / f"{name}_{label}.html"
+                    write_report(java_files, streaming, str(output_path))
+                    reports.append(strip_timestamp(output_path.read_text(encoding='utf-8')))
+                self.assertSameReport(*reports, ('in-memory.html', 'streaming.html'))
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,32 @@
+"""
+Importing the CLI must not load charts, report or the generated parser:
+they are imported only when their phase runs.
+"""
+
+import json
+import subprocess
+import sys
+import unittest
+
+from tests.support import DEFERRED_MODULES, PROJECT_DIR
+
+# Eseguito in un interprete nuovo, dalla radice del progetto
+_PROBE = r"""
+import json, sys
+import main_opt
+print(json.dumps([name for name in sys.argv[1:] if name in sys.modules]))
+"""
+
+
+class StartupTest(unittest.TestCase):
+
+    def test_cli_import_defers_heavy_modules(self):
+        completed = subprocess.run([sys.executable, '-c', _PROBE, *DEFERRED_MODULES], cwd=PROJECT_DIR,
+                                   capture_output=True, text=True)
+        self.assertEqual(completed.returncode, 0, completed.stderr)
+        eager = json.loads(completed.stdout.strip().splitlines()[-1])
+        self.assertEqual(eager, [], f"imported eagerly by the CLI: {', '.join(eager)}")
+
+
+if __name__ == '__main__':
+    unittest.main()
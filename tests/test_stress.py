@@ -0,0 +1,72 @@
+"""
+Deeply nested expressions: trees deeper than the interpreter recursion limit
+must be walked by the explicit-stack MetricsVisitor and by both engines.
+"""
+
+import sys
+import tempfile
+import unittest
+from pathlib import Path
+
+from tests.support import (PARSER_RECURSIVE_SHAPES, STRESS_SHAPES, class_signature, requires_grammar,
+                           result_signature, stress_source, tree_depth)
+
+# Termini per espressione: una visita ricorsiva supererebbe il limite di ricorsione
+DEPTH = 2 * sys.getrecursionlimit()
+# Livelli fra compilationUnit e l'espressione e fra l'ultimo operatore e il letterale
+TREE_DEPTH_MARGIN = 100
+
+
+@requires_grammar
+class DeepExpressionTest(unittest.TestCase):
+
+    def setUp(self):
+        tmp = tempfile.TemporaryDirectory(prefix='astra_test_')
+        self.addCleanup(tmp.cleanup)
+        self.tmp = Path(tmp.name)
+
+    def _check_shape(self, shape: str) -> bool:
+        """True when the parser accepted the shape and every check passed on it"""
+        from astra.metrics_visitor import MetricsVisitor
+        from astra.parsing import parse_compilation_unit
+        from astra.pipeline import analyze_java_file
+
+        file_path = self.tmp / f"{shape.replace(' ', '_')}.java"
+        file_path.write_text(stress_source(shape, DEPTH), encoding='utf-8')
+        try:
+            tree, _ = parse_compilation_unit(str(file_path))
+        except RecursionError:
+            self.assertIn(shape, PARSER_RECURSIVE_SHAPES, f"the parser recursed on '{shape}'")
+            return False
+
+        # L'albero deve essere davvero profondo quanto richiesto (e non di più)
+        depth = tree_depth(tree)
+        self.assertGreaterEqual(depth, DEPTH, shape)
+        self.assertLessEqual(depth, DEPTH + TREE_DEPTH_MARGIN, shape)
+        self.assertGreater(depth, sys.getrecursionlimit(), shape)
+
+        walker = MetricsVisitor({}, {})
+        walker.current_file_path = str(file_path)
+        walker.visit(tree)  # un RecursionError qui fa fallire il test
+        walker.finalize_file(str(file_path))
+        expected = {name: class_signature(cm) for name, cm in walker.get_results().items()}
+        self.assertEqual(set(expected), {'Deep'}, shape)
+
+        for engine in ('visitor', 'listener'):
+            result = analyze_java_file(str(file_path), engine=engine)
+            self.assertIsNone(result.error, f"{engine} engine failed on '{shape}'")
+            self.assertEqual(result_signature(result)[1], expected, f"{engine} engine on '{shape}'")
+        return True
+
+    def test_shapes(self):
+        walked = []
+        for shape in STRESS_SHAPES:
+            with self.subTest(shape=shape):
+                if self._check_shape(shape):
+                    walked.append(shape)
+        # Le forme ricorsive a sinistra diventano cicli nel parser: devono arrivare al walker
+        self.assertTrue(set(STRESS_SHAPES) - PARSER_RECURSIVE_SHAPES <= set(walked), walked)
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,53 @@
+"""
+MetricsVisitor against the implementations it replaced: the token-type lookup
+table against string tests, the dispatch table against accept()/hasattr.
+"""
+
+import unittest
+
+from tests.support import example_files, legacy_visit_terminal, recursive_visitor, requires_grammar
+
+
+@requires_grammar
+class VisitorTest(unittest.TestCase):
+
+    def test_terminal_classification(self):
+        from antlr4.tree.Tree import TerminalNodeImpl
+        from astra.metrics_visitor import MethodMetrics, MetricsVisitor
+        from astra.parsing import lex_file
+        for file_path in example_files():
+            nodes = [TerminalNodeImpl(tok) for tok in lex_file(file_path)]
+            counts = []
+            for visit_terminal in (legacy_visit_terminal, MetricsVisitor.visitTerminal):
+                visitor = MetricsVisitor({}, {})
+                visitor.current_method = MethodMetrics('test', 'Test')
+                for node in nodes:
+                    visit_terminal(visitor, node)
+                method = visitor.current_method
+                counts.append((dict(method.operators), dict(method.operands), method.cyclomatic_complexity))
+            self.assertEqual(counts[0], counts[1], file_path)
+
+    def test_dispatch_table(self):
+        from astra.metrics_visitor import MetricsVisitor
+        from astra.parsing import parse_compilation_unit
+        trees = [(file_path, parse_compilation_unit(file_path)[0]) for file_path in example_files()]
+        signatures = []
+        for visitor_class in (recursive_visitor(), MetricsVisitor):
+            visitor = visitor_class({}, {})
+            for file_path, tree in trees:
+                visitor.current_file_path = file_path
+                visitor.current_method = visitor.current_class = None
+                try:
+                    visitor.visit(tree)
+                except Exception:
+                    pass  # stesso comportamento di analyze_tree: la visita del file si interrompe
+            signatures.append({name: (sorted(cm.external_types),
+                                      {k: (m.cyclomatic_complexity, dict(m.operators), dict(m.operands))
+                                       for k, m in cm.methods.items()})
+                               for name, cm in visitor.get_results().items()})
+        self.assertTrue(signatures[1])
+        self.assertEqual(signatures[0], signatures[1])
+
+
+if __name__ == '__main__':
+    unittest.main()